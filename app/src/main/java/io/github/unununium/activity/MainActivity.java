@@ -45,12 +45,17 @@ import io.github.unununium.comm.LocalParameters;
 import io.github.unununium.comm.ServerConnection;
 import io.github.unununium.fragment.DiagnosticsOverlayFragment;
 import io.github.unununium.fragment.NormalOverlayFragment;
+import io.github.unununium.fragment.RewindOverlayFragment;
 import io.github.unununium.fragment.SettingsOverlayFragment;
+import io.github.unununium.util.CameraSurfaceView;
 import io.github.unununium.util.Constants;
 import io.github.unununium.util.FragmentOnBackPressed;
 import io.github.unununium.util.GeneralFunctions;
 import io.github.unununium.util.InputHandler;
+import io.github.unununium.util.MemoryBudget;
 import io.github.unununium.util.ValueHandler;
+import io.github.unununium.video.RewindBuffer;
+import io.github.unununium.video.SessionRecorder;
 
 /** The main Activity for the app, handles displaying the videos only
  * as the UI is handled by the overlay fragments. **/
@@ -61,6 +66,10 @@ public class MainActivity extends AppCompatActivity {
     public ConnectionParameters remoteParams = new ConnectionParameters();
     public LocalParameters localParams = new LocalParameters();
     public ServerConnection serverConnection = null;
+    public CameraSurfaceView cameraView = null;
+    public volatile SessionRecorder sessionRecorder = null;
+    public final RewindBuffer rewindBuffer = new RewindBuffer(localParams.rewindBufferMb * 1024 * 1024);
+    public MemoryBudget memoryBudget = null;
     private boolean doubleBackToExitPressedOnce = false;
     private final float[] rotationVector = new float[4];
     private float lastY = 0;
@@ -112,11 +121,14 @@ public class MainActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        cameraView = findViewById(R.id.m1_playerview);
         SensorManager manager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
         Sensor sensor = manager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
         manager.registerListener(sensorListener, sensor, SensorManager.SENSOR_DELAY_GAME);
         inputHandler = new InputHandler(MainActivity.this);
         valueHandler = new ValueHandler(MainActivity.this);
+        memoryBudget = new MemoryBudget(MainActivity.this);
+        cameraView.setOnFeedFrozenListener(frozen -> valueHandler.onFeedFrozenChanged());
         showOverlay(Constants.OverlayType.TYPE_NORMAL_TEXT);
     }
 
@@ -137,6 +149,9 @@ public class MainActivity extends AppCompatActivity {
         super.onPause();
         if (serverConnection != null) serverConnection.pauseConnection();
         if (remoteParams.isOperator()) unregisterSensor();
+        // The recording would otherwise not be finished if the app is closed
+        if (sessionRecorder != null) inputHandler.onToggleRecording();
+        memoryBudget.onPause();
     }
 
     /** Resumes the live stream. **/
@@ -151,6 +166,20 @@ public class MainActivity extends AppCompatActivity {
         }
         if (remoteParams.isOperator()) registerSensor();
         setImmersiveSticky();
+        memoryBudget.onResume();
+    }
+
+    /** Gives up memory used by the video when the system runs low, see MemoryBudget. **/
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        memoryBudget.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        memoryBudget.onLowMemory();
     }
 
     @Override
@@ -159,6 +188,13 @@ public class MainActivity extends AppCompatActivity {
         serverConnection.terminateConnection();
     }
 
+    /** Stops the thread that saves screenshots once the files that are being saved are written. **/
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (inputHandler != null) inputHandler.shutdown();
+    }
+
     /** Set the top bar of the screen to be hidden. **/
     private void setImmersiveSticky() {
         getWindow().getDecorView().setSystemUiVisibility(
@@ -285,6 +321,7 @@ public class MainActivity extends AppCompatActivity {
                 inputHandler.onToggleUI();
                 break;
             case KeyEvent.KEYCODE_BUTTON_B:
+                inputHandler.onToggleRecording();
                 break;
             case KeyEvent.KEYCODE_DPAD_DOWN:
             case KeyEvent.KEYCODE_DPAD_DOWN_LEFT:
@@ -308,6 +345,9 @@ public class MainActivity extends AppCompatActivity {
             case KeyEvent.KEYCODE_BUTTON_R1:
                 inputHandler.onToggleDiagnosticsMode();
                 break;
+            case KeyEvent.KEYCODE_BUTTON_L2:
+                inputHandler.onToggleRewind();
+                break;
             case KeyEvent.KEYCODE_BUTTON_SELECT:
             case KeyEvent.KEYCODE_MENU:
                 inputHandler.onToggleUpperOverlay();
@@ -336,6 +376,9 @@ public class MainActivity extends AppCompatActivity {
             case TYPE_NORMAL_ICON:
                 targetFragment = new NormalOverlayFragment(MainActivity.this, false, localParams.isDay);
                 break;
+            case TYPE_REWIND:
+                targetFragment = new RewindOverlayFragment(MainActivity.this, localParams.isDay);
+                break;
             default:
                 // Used to hide the UI
                 targetFragment = null;
@@ -347,6 +390,7 @@ public class MainActivity extends AppCompatActivity {
             if (currentFragment != null) ft.remove(currentFragment);
             currentFragment = null;
             localParams.uiIsHidden = true;
+            localParams.rewindIsShown = false;
         } else {
             // No special case for Settings page as the settings are cancelled anyways
             currentFragment = targetFragment;
@@ -368,11 +412,15 @@ public class MainActivity extends AppCompatActivity {
                     localParams.diagnosticsModeEnabled = false;
                     localParams.upperOverlayIsHidden = true;
                     break;
+                case TYPE_REWIND:
+                    // The overlay that was shown before is shown again when returning to the live feed
+                    break;
                 case TYPE_NONE:
                     // It should be handled in the above statement already
                     break;
             }
             localParams.uiIsHidden = false;
+            localParams.rewindIsShown = overlayType == Constants.OverlayType.TYPE_REWIND;
             ft.replace(R.id.m1_overlay, currentFragment, "MainActivity.Overlay");
         }
         ft.commit();
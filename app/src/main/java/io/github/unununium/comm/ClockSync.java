@@ -0,0 +1,72 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.comm;
+
+/** Estimates the offset between the clock of the server and SystemClock.elapsedRealtime from round trips,
+ * in the same way as NTP. The server's time is assumed to be halfway through each round trip, so the error of
+ * a sample is at most half of its round trip. Out of the latest samples, the one with the shortest round trip
+ * is used, as it was held up the least by the network. **/
+public class ClockSync {
+    private static final int SAMPLE_COUNT = 8;
+
+    private final long[] offsets = new long[SAMPLE_COUNT];
+    private final long[] roundTrips = new long[SAMPLE_COUNT];
+    private int count = 0;
+    private int next = 0;
+
+    /** Adds a round trip that was sent and answered at the given elapsedRealtime, with the server's time. **/
+    public synchronized void addSample(long sendTimeMs, long serverTimeMs, long receiveTimeMs) {
+        if (receiveTimeMs < sendTimeMs) return;
+        offsets[next] = serverTimeMs - (sendTimeMs + receiveTimeMs) / 2;
+        roundTrips[next] = receiveTimeMs - sendTimeMs;
+        next = (next + 1) % SAMPLE_COUNT;
+        if (count < SAMPLE_COUNT) count++;
+    }
+
+    public synchronized void reset() {
+        count = 0;
+        next = 0;
+    }
+
+    //****** Start of getter functions ******//
+
+    public synchronized boolean isSynchronized() {
+        return count > 0;
+    }
+
+    /** The server's time minus elapsedRealtime in ms, or 0 if there are no samples. **/
+    public synchronized long getOffsetMs() {
+        int best = getBestSample();
+        return best < 0 ? 0 : offsets[best];
+    }
+
+    /** The round trip of the sample the offset is taken from, which bounds its error, or -1 if there is none. **/
+    public synchronized long getRoundTripMs() {
+        int best = getBestSample();
+        return best < 0 ? -1 : roundTrips[best];
+    }
+
+    private int getBestSample() {
+        int best = -1;
+        for (int i = 0; i < count; i++) {
+            if (best < 0 || roundTrips[i] < roundTrips[best]) best = i;
+        }
+        return best;
+    }
+}
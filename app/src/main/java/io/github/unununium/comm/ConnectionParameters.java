@@ -34,6 +34,12 @@ public class ConnectionParameters {
         NETWORK_NOT_AVAILABLE
     }
 
+    /** The encoding of the video that is sent by the server. **/
+    public enum VideoMode {
+        JPEG,
+        H264
+    }
+
     State state = State.DISCONNECTED;
     boolean isOperator = false;
     String guid = UUID.randomUUID().toString();
@@ -48,6 +54,7 @@ public class ConnectionParameters {
     double bufferDuration = 0.4;
     int videoWidth = 1280;
     int videoHeight = 720;
+    VideoMode videoMode = VideoMode.JPEG;
     int velocity = 1;
     boolean isMoving = false;
     float cameraRotation = 0f;
@@ -143,4 +150,8 @@ public class ConnectionParameters {
     public int getVideoWidth() {
         return videoWidth;
     }
+
+    public VideoMode getVideoMode() {
+        return videoMode;
+    }
 }
@@ -30,6 +30,13 @@ public class LocalParameters {
         ROBOT
     }
 
+    /** How screenshots are saved, only the original frame is saved without decoding or encoding it. **/
+    public enum ScreenshotFormat {
+        JPEG,
+        PNG,
+        WEBP
+    }
+
     public final DecimalFormat fourDP = new DecimalFormat("0.0000");
     public final DecimalFormat twoDP = new DecimalFormat("0.00");
     public final DecimalFormat oneDP = new DecimalFormat("0.0");
@@ -41,7 +48,14 @@ public class LocalParameters {
     public boolean diagnosticsModeEnabled = false;
     public boolean uiIsHidden = false;
     public boolean upperOverlayIsHidden = true;
+    public boolean rewindIsShown = false;
     public boolean isDay = true;
+    public boolean stereoMode = false;
+    public boolean lensDistortion = false;
+    public boolean edgeOverlay = false;
+    public boolean stabilization = false;
+    public boolean nightMode = false;
+    public boolean nightEqualization = true;
 
     public float lowerTempBound = 20.0f;
     public float upperTempBound = 60.0f;
@@ -55,6 +69,12 @@ public class LocalParameters {
     public float h2WarnLevel = 0f;
     public float lpgWarnLevel = 0f;
 
+    public long maxFrameAgeMs = 500; // Frames that arrive later than this are not decoded
+    public int rewindBufferMb = 16; // The memory kept for rewinding the video, 0 disables it
+    public ScreenshotFormat screenshotFormat = ScreenshotFormat.JPEG;
+    public boolean udpVideo = false; // Whether the video is requested over UDP instead of Socket.IO
+    public boolean latencyMeasurement = false; // Whether the glass-to-glass latency is measured
+
     public int getControlModeInt() {
         return phoneControlMode == LocalParameters.ControlMode.DISABLED ? 0
                 : phoneControlMode == LocalParameters.ControlMode.CAMERA ? 1 : 2;
@@ -62,6 +82,7 @@ public class LocalParameters {
 
     public Constants.OverlayType getCurrentOverlay() {
         if (!uiIsHidden) {
+            if (rewindIsShown) return Constants.OverlayType.TYPE_REWIND;
             if (upperOverlayIsHidden) {
                 if (diagnosticsModeEnabled) return Constants.OverlayType.TYPE_DIAGNOSTICS;
                 else if (normalOverlayIsText) return Constants.OverlayType.TYPE_NORMAL_TEXT;
@@ -22,6 +22,9 @@ import android.content.Context;
 import android.content.IntentFilter;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -34,9 +37,13 @@ import com.android.volley.toolbox.Volley;
 
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.net.InetSocketAddress;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
@@ -49,7 +56,13 @@ import java.util.UUID;
 import io.github.unununium.BuildConfig;
 import io.github.unununium.R;
 import io.github.unununium.activity.MainActivity;
-import io.github.unununium.util.CameraSurfaceView;
+import io.github.unununium.util.Constants;
+import io.github.unununium.video.H264StreamDecoder;
+import io.github.unununium.video.QualityController;
+import io.github.unununium.video.SessionRecorder;
+import io.github.unununium.video.StaleFrameFilter;
+import io.github.unununium.video.VideoStats;
+import io.socket.client.Ack;
 import io.socket.client.IO;
 import io.socket.client.Socket;
 import io.socket.emitter.Emitter;
@@ -61,12 +74,44 @@ public class ServerConnection {
     private Socket socket = null;
     private NetworkStateListener listener;
     private final DecimalFormat fourDP = new DecimalFormat("0.0000");
+    private volatile H264StreamDecoder h264Decoder = null;
+    private StaleFrameFilter staleFrameFilter;
+    private volatile byte[] latestJpegFrame = null;
+    private UdpVideoReceiver udpReceiver = null;
+    private final QualityController qualityController = new QualityController(this::requestVideoQuality);
+    private final Handler qualityHandler = new Handler(Looper.getMainLooper());
+    private final Runnable qualitySampler = new Runnable() {
+        @Override
+        public void run() {
+            if (parent.cameraView != null) qualityController.sample(parent.cameraView.getVideoStats());
+            qualityHandler.postDelayed(this, QUALITY_SAMPLE_INTERVAL);
+        }
+    };
 
-    private final Emitter.Listener onSessionInfoReceived = args -> {
-        parseData((JSONObject) args[0]);
+    private final TelemetryAligner telemetryAligner = new TelemetryAligner(telemetry -> {
+        parseData(telemetry);
         parent.valueHandler.onDataReceived();
+    });
+    private final ClockSync clockSync = new ClockSync();
+    private final Handler clockSyncHandler = new Handler(Looper.getMainLooper());
+    private final Runnable clockSyncer = new Runnable() {
+        @Override
+        public void run() {
+            // The clock is only needed to measure the latency
+            if (parent.localParams.latencyMeasurement) requestClockSync();
+            clockSyncHandler.postDelayed(this, CLOCK_SYNC_INTERVAL);
+        }
     };
 
+    private static final long QUALITY_SAMPLE_INTERVAL = 2000; // ms
+    private static final long CLOCK_SYNC_INTERVAL = 2000; // ms
+
+    private static final String VIDEO_MODE_H264 = "h264";
+    private static final String VIDEO_MODE_JPEG = "jpeg";
+
+    // The telemetry is shown once the frame captured at the same time is presented
+    private final Emitter.Listener onSessionInfoReceived = args -> telemetryAligner.offer((JSONObject) args[0]);
+
     private final Emitter.Listener onTestClientReceived = args -> {
         if (parent.remoteParams.isOperator) {
             onConnectionFailure("testClient event received for operator");
@@ -86,12 +131,91 @@ public class ServerConnection {
     private final Emitter.Listener onTestRobotReceived = args ->
             onConnectionFailure("testRobot received for client");
 
-    private final Emitter.Listener onVideoBufferReceived = args ->
-            parent.runOnUiThread(() -> ((CameraSurfaceView)
-                    parent.findViewById(R.id.m1_playerview)).setCurrentImage((byte[]) args[0]));
+    // The frame may be followed by an object with its sequence number and capture timestamp
+    private final Emitter.Listener onVideoBufferReceived = args -> {
+        if (parent.cameraView == null) return;
+        long arrivalTime = SystemClock.elapsedRealtime();
+        long sequence = -1;
+        long captureTime = -1;
+        if (args.length > 1 && args[1] instanceof JSONObject) {
+            JSONObject metadata = (JSONObject) args[1];
+            sequence = metadata.optLong("seq", -1);
+            captureTime = metadata.optLong("timestamp", -1);
+        }
+        onJpegFrameReceived((byte[]) args[0], sequence, captureTime, arrivalTime);
+    };
+
+    // The server answers a request for UDP video with the port it sends the video from
+    private final Emitter.Listener onUdpVideoReceived = args -> {
+        int port = -1;
+        try {
+            port = ((JSONObject) args[0]).getInt("port");
+        } catch (JSONException | ClassCastException e) {
+            e.printStackTrace();
+        }
+        if (port > 0 && parent.localParams.udpVideo) startUdpVideo(port);
+    };
+
+    /** Handles a JPEG frame from either Socket.IO or the UDP receiver. A negative sequence or capture time means
+     * that it is unknown. Synchronized as the two arrive on different threads.
+     * Decoding happens on the worker threads of the decoder pool and drawing on the render thread of the view,
+     * so there is no need to go through the UI thread. **/
+    private synchronized void onJpegFrameReceived(@NotNull byte[] buffer, long sequence, long captureTime,
+                                                  long arrivalTime) {
+        if (parent.cameraView == null) return;
+        latestJpegFrame = buffer;
+        parent.cameraView.getVideoStats().onFrameReceived(buffer.length);
+        // Stale frames are kept as well, as they are still worth looking back at
+        if (parent.rewindBuffer.append(buffer, 0, buffer.length, arrivalTime))
+            parent.cameraView.getVideoStats().onBytesCopied(buffer.length);
+        SessionRecorder recorder = parent.sessionRecorder;
+        if (recorder != null) recorder.offer(buffer, arrivalTime);
+        staleFrameFilter.setMaxAgeMs(parent.localParams.maxFrameAgeMs);
+        if (staleFrameFilter.accept(sequence, captureTime, arrivalTime)) {
+            parent.cameraView.setCurrentImage(buffer, captureTime, arrivalTime);
+        }
+    }
+
+    private final Emitter.Listener onH264BufferReceived = args -> {
+        H264StreamDecoder decoder = h264Decoder;
+        if (decoder != null) decoder.onAccessUnitReceived((byte[]) args[0]);
+    };
+
+    // The supported video modes are sent on connection, in order of preference
+    private final Emitter.Listener onSocketConnected = args -> {
+        JSONObject obj = new JSONObject();
+        try {
+            JSONArray modes = new JSONArray();
+            modes.put(VIDEO_MODE_H264);
+            modes.put(VIDEO_MODE_JPEG);
+            obj.put("modes", modes);
+            if (socket != null) socket.emit("clientRequestVideoMode", obj);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        // Start from the best quality on each connection and adapt from there
+        qualityController.reset();
+        requestVideoQuality(qualityController.getCurrentLevel());
+        if (parent.localParams.udpVideo) requestUdpVideo();
+    };
+
+    private final Emitter.Listener onVideoModeReceived = args -> {
+        String mode = null;
+        try {
+            mode = ((JSONObject) args[0]).getString("mode");
+        } catch (JSONException | ClassCastException e) {
+            e.printStackTrace();
+        }
+        // Servers that do not support H.264 would continue sending JPEG frames
+        setVideoMode(VIDEO_MODE_H264.equals(mode) ? ConnectionParameters.VideoMode.H264
+                : ConnectionParameters.VideoMode.JPEG);
+    };
 
     public ServerConnection(MainActivity parent) {
         this.parent = parent;
+        staleFrameFilter = new StaleFrameFilter(parent.cameraView.getVideoStats(), parent.localParams.maxFrameAgeMs);
+        parent.cameraView.setOnFramePresentedListener(telemetryAligner::onFramePresented);
+        updatePlayoutDelay();
         if (isOnline()) setState(ConnectionParameters.State.DISCONNECTED);
         else setState(ConnectionParameters.State.NETWORK_NOT_AVAILABLE);
     }
@@ -158,7 +282,19 @@ public class ServerConnection {
             socket.on("testOperator", onTestOperatorReceived);
             socket.on("testRobot", onTestRobotReceived);
             socket.on("clientSendVideo", onVideoBufferReceived);
+            socket.on("clientSendVideoH264", onH264BufferReceived);
+            socket.on("clientVideoMode", onVideoModeReceived);
+            socket.on("clientUdpVideo", onUdpVideoReceived);
+            socket.on(Socket.EVENT_CONNECT, onSocketConnected);
+            staleFrameFilter.reset();
+            parent.cameraView.getFrozenFeedDetector().reset();
             socket.connect();
+            qualityHandler.removeCallbacks(qualitySampler);
+            qualityHandler.postDelayed(qualitySampler, QUALITY_SAMPLE_INTERVAL);
+            clockSync.reset();
+            telemetryAligner.reset();
+            clockSyncHandler.removeCallbacks(clockSyncer);
+            clockSyncHandler.post(clockSyncer);
         }
         IntentFilter filter = new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION);
         listener = new NetworkStateListener(this);
@@ -173,8 +309,16 @@ public class ServerConnection {
             socket.off("testOperator", onTestOperatorReceived);
             socket.off("testRobot", onTestRobotReceived);
             socket.off("clientSendVideo", onVideoBufferReceived);
+            socket.off("clientSendVideoH264", onH264BufferReceived);
+            socket.off("clientVideoMode", onVideoModeReceived);
+            socket.off("clientUdpVideo", onUdpVideoReceived);
+            stopUdpVideo();
+            socket.off(Socket.EVENT_CONNECT, onSocketConnected);
+            setVideoMode(ConnectionParameters.VideoMode.JPEG);
             setState(ConnectionParameters.State.SOCKET_DISCONNECTED);
         }
+        qualityHandler.removeCallbacks(qualitySampler);
+        clockSyncHandler.removeCallbacks(clockSyncer);
         try {
             if (listener != null) parent.unregisterReceiver(listener);
         } catch (IllegalArgumentException e) {
@@ -313,8 +457,119 @@ public class ServerConnection {
         parent.valueHandler.onStateChanged();
     }
 
+    /** Switches the decoder used for the video, the H.264 decoder only runs while it is in use. **/
+    private synchronized void setVideoMode(ConnectionParameters.VideoMode videoMode) {
+        parent.remoteParams.videoMode = videoMode;
+        if (videoMode == ConnectionParameters.VideoMode.H264) {
+            // The last JPEG frame would no longer be what is shown
+            latestJpegFrame = null;
+            if (h264Decoder == null && parent.cameraView != null) {
+                // The resolution may be changed by the quality controller, so the largest one is used
+                QualityController.Level bestLevel = QualityController.getBestLevel();
+                h264Decoder = new H264StreamDecoder(parent.cameraView, bestLevel.width, bestLevel.height);
+                h264Decoder.start();
+            }
+        } else if (h264Decoder != null) {
+            h264Decoder.quit();
+            h264Decoder = null;
+        }
+    }
+
+    /** Asks the server for its time, which it answers through the acknowledgement with {time} in ms.
+     * Servers that do not support it would not answer, and the latency is then not measured. **/
+    private void requestClockSync() {
+        if (socket == null || !socket.connected()) return;
+        long sendTime = SystemClock.elapsedRealtime();
+        socket.emit("clientClockSync", new JSONObject(), (Ack) args -> {
+            long receiveTime = SystemClock.elapsedRealtime();
+            if (args.length == 0 || !(args[0] instanceof JSONObject)) return;
+            long serverTime = ((JSONObject) args[0]).optLong("time", -1);
+            if (serverTime < 0) return;
+            clockSync.addSample(sendTime, serverTime, receiveTime);
+            if (parent.cameraView != null)
+                parent.cameraView.getLatencyMeter().setClockOffset(clockSync.getOffsetMs());
+        });
+    }
+
+    /** Switches between receiving the video over UDP and through Socket.IO. If the server does not support UDP
+     * it would not answer, and the video continues through Socket.IO. **/
+    public void setUdpVideo(boolean udpVideo) {
+        if (socket == null || !socket.connected()) return;
+        if (udpVideo) {
+            requestUdpVideo();
+        } else {
+            stopUdpVideo();
+            socket.emit("clientStopUdpVideo");
+        }
+    }
+
+    private void requestUdpVideo() {
+        if (socket != null) socket.emit("clientRequestUdpVideo", new JSONObject());
+    }
+
+    private synchronized void startUdpVideo(int port) {
+        if (udpReceiver != null) return;
+        InetSocketAddress address = new InetSocketAddress(URI.create(BuildConfig.SERVER_URL).getHost(), port);
+        if (address.isUnresolved()) {
+            Log.w("ServerConnection", "Unable to resolve server for UDP video");
+            return;
+        }
+        udpReceiver = new UdpVideoReceiver(address, parent.remoteParams.guid, this::onJpegFrameReceived,
+                () -> {
+                    if (parent.cameraView != null) parent.cameraView.getVideoStats().onFrameLost();
+                });
+        udpReceiver.start();
+        // The frame is copied once from the datagram into its array
+        if (parent.cameraView != null) parent.cameraView.getVideoStats().setTransportCopies(1);
+    }
+
+    private synchronized void stopUdpVideo() {
+        if (udpReceiver == null) return;
+        udpReceiver.quit();
+        udpReceiver = null;
+        if (parent.cameraView != null)
+            parent.cameraView.getVideoStats().setTransportCopies(VideoStats.SOCKET_IO_COPIES);
+    }
+
+    /** Gets the last JPEG frame that was received as it was sent, or null if none was received since the
+     * video switched to H.264. The array should not be modified. **/
+    @Nullable
+    public byte[] getLatestJpegFrame() {
+        return latestJpegFrame;
+    }
+
+    /** Operators need the lowest latency possible to control the robot, while observers get a smoother feed. **/
+    private void updatePlayoutDelay() {
+        if (parent.cameraView == null) return;
+        if (parent.remoteParams.isOperator) {
+            parent.cameraView.setPlayoutDelayBounds(0, 0);
+        } else {
+            parent.cameraView.setPlayoutDelayBounds(Math.round(parent.remoteParams.bufferDuration * 1000),
+                    Constants.MAX_BUFFER);
+        }
+    }
+
+    /** Asks the robot to change the resolution, JPEG quality and frame rate of the video. The robot acknowledges
+     * the request once it sends at the new level, and until then the frame rate is not used to judge the level. **/
+    private void requestVideoQuality(@NotNull QualityController.Level level) {
+        parent.remoteParams.videoWidth = level.width;
+        parent.remoteParams.videoHeight = level.height;
+        JSONObject obj = new JSONObject();
+        try {
+            obj.put("width", level.width);
+            obj.put("height", level.height);
+            obj.put("quality", level.quality);
+            obj.put("fps", level.fps);
+            if (socket != null) socket.emit("clientRequestVideoQuality", obj,
+                    (Ack) args -> qualityController.onLevelAcknowledged(level));
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
     public void setOperator(boolean isOperator) {
         parent.remoteParams.isOperator = isOperator;
+        updatePlayoutDelay();
         terminateConnection();
         createConnection();
         parent.valueHandler.onOperatorChanged();
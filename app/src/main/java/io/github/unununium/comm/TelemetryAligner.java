@@ -0,0 +1,190 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.comm;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/** Holds back the telemetry until the frame that was captured at the same time is presented, so that the readings
+ * shown describe the frame on the screen instead of running ahead of it.
+ * The telemetry and the frames are both timestamped on the robot's clock, as the timestamp of the telemetry and the
+ * capture time of the frames. When a frame is presented between two samples, the numeric readings are interpolated
+ * between them at its capture time.
+ * Telemetry without a timestamp, or while the frames have none, is applied as soon as it arrives. A sample that is
+ * held for longer than MAX_HOLD_MS is applied anyway, so that the readings do not stop when the video does. **/
+public class TelemetryAligner {
+    /** Called on the main thread with the telemetry to show. **/
+    public interface OnTelemetryReadyListener {
+        void onTelemetryReady(@NotNull JSONObject telemetry);
+    }
+
+    private static final String TIMESTAMP_KEY = "timestamp";
+    private static final int CAPACITY = 32;
+    private static final long MAX_HOLD_MS = 1000;
+
+    private final OnTelemetryReadyListener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ArrayDeque<Sample> samples = new ArrayDeque<>();
+    // Whether the last presented frame had a capture time, otherwise there is nothing to align to
+    private boolean framesTimestamped = false;
+    // Only one flush is posted at a time, for the oldest sample that is still held
+    private boolean flushPending = false;
+    private final Runnable staleFlusher = this::flushStale;
+
+    public TelemetryAligner(@NotNull OnTelemetryReadyListener listener) {
+        this.listener = listener;
+    }
+
+    /** Called with each telemetry update as it arrives, from any thread. **/
+    public void offer(@NotNull JSONObject telemetry) {
+        long timestamp = telemetry.optLong(TIMESTAMP_KEY, -1);
+        synchronized (this) {
+            if (timestamp >= 0 && framesTimestamped) {
+                // A robot that restarted has a clock that starts again, so the held samples no longer apply
+                if (!samples.isEmpty() && timestamp < samples.peekLast().timestamp) samples.clear();
+                if (samples.size() == CAPACITY) samples.pollFirst();
+                samples.addLast(new Sample(telemetry, timestamp, SystemClock.elapsedRealtime()));
+                if (!flushPending) {
+                    flushPending = true;
+                    handler.postDelayed(staleFlusher, MAX_HOLD_MS);
+                }
+                return;
+            }
+        }
+        handler.post(() -> listener.onTelemetryReady(telemetry));
+    }
+
+    /** Called by the render thread for each frame that is presented, with its capture time or -1 if it has none. **/
+    public void onFramePresented(long captureTimeMs) {
+        JSONObject telemetry;
+        synchronized (this) {
+            framesTimestamped = captureTimeMs >= 0;
+            if (!framesTimestamped) {
+                telemetry = samples.isEmpty() ? null : samples.peekLast().telemetry;
+                samples.clear();
+            } else {
+                telemetry = getTelemetryAt(captureTimeMs);
+            }
+        }
+        if (telemetry != null) {
+            JSONObject ready = telemetry;
+            handler.post(() -> listener.onTelemetryReady(ready));
+        }
+    }
+
+    /** Gets the telemetry at the time from the held samples, or null if none of them is due yet.
+     * The samples before the latest one that is due are no longer needed and are removed. **/
+    @Nullable
+    private JSONObject getTelemetryAt(long timeMs) {
+        Sample due = null;
+        while (!samples.isEmpty() && samples.peekFirst().timestamp <= timeMs) due = samples.pollFirst();
+        if (due == null) return null;
+        // The sample is kept to interpolate from until the next one is due, but it is only applied once
+        Sample next = samples.peekFirst();
+        samples.addFirst(due);
+        if (next == null) {
+            if (due.applied) return null;
+            due.applied = true;
+            return due.telemetry;
+        }
+        due.applied = true;
+        return interpolate(due, next, timeMs);
+    }
+
+    /** Linearly interpolates the numeric readings of the two samples, the others are taken from the first. **/
+    @NotNull
+    private static JSONObject interpolate(@NotNull Sample from, @NotNull Sample to, long timeMs) {
+        double fraction = (double) (timeMs - from.timestamp) / (to.timestamp - from.timestamp);
+        JSONObject result = new JSONObject();
+        Iterator<String> keys = from.telemetry.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object fromValue = from.telemetry.opt(key);
+            Object toValue = to.telemetry.opt(key);
+            try {
+                if (TIMESTAMP_KEY.equals(key)) {
+                    result.put(key, timeMs);
+                } else if (fromValue instanceof Number && toValue instanceof Number) {
+                    double start = ((Number) fromValue).doubleValue();
+                    result.put(key, start + (((Number) toValue).doubleValue() - start) * fraction);
+                } else {
+                    result.put(key, fromValue);
+                }
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+        return result;
+    }
+
+    /** Applies the latest sample that was held for too long, which happens when frames stop being presented.
+     * It becomes the sample to interpolate from, and the samples before it are removed. The next flush is then
+     * posted for when the oldest sample that is still held becomes stale. **/
+    private void flushStale() {
+        Sample stale = null;
+        synchronized (this) {
+            flushPending = false;
+            long now = SystemClock.elapsedRealtime();
+            Sample held = null;
+            for (Sample sample : samples) {
+                if (sample.applied) continue;
+                if (now - sample.arrivalTimeMs >= MAX_HOLD_MS) stale = sample;
+                else if (held == null) held = sample;
+            }
+            if (held != null) {
+                flushPending = true;
+                handler.postDelayed(staleFlusher, held.arrivalTimeMs + MAX_HOLD_MS - now);
+            }
+            if (stale == null) return;
+            while (samples.peekFirst() != stale) samples.pollFirst();
+            stale.applied = true;
+        }
+        listener.onTelemetryReady(stale.telemetry);
+    }
+
+    /** Discards the held telemetry, such as when the connection is paused. **/
+    public synchronized void reset() {
+        samples.clear();
+        framesTimestamped = false;
+        flushPending = false;
+        handler.removeCallbacks(staleFlusher);
+    }
+
+    private static class Sample {
+        final JSONObject telemetry;
+        final long timestamp;
+        final long arrivalTimeMs;
+        boolean applied = false;
+
+        Sample(@NotNull JSONObject telemetry, long timestamp, long arrivalTimeMs) {
+            this.telemetry = telemetry;
+            this.timestamp = timestamp;
+            this.arrivalTimeMs = arrivalTimeMs;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.comm;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+
+/** Receives JPEG frames over UDP, as an alternative to receiving them through Socket.IO.
+ * Over TCP a lost packet holds up every frame behind it until it is resent, while here a frame that cannot be
+ * completed is given up once its deadline passes and the frames after it are not held up.
+ *
+ * Each frame is split into data packets of a fixed payload size, and every group of data packets is followed by
+ * a parity packet that holds the XOR of their payloads, so that one lost packet in each group can be rebuilt.
+ * Every packet starts with a big endian header:
+ * type (1 byte, 0 for data and 1 for parity), reserved (1), frame sequence (4),
+ * index (2, of the packet for data and of the group for parity), number of data packets (2), group size (2),
+ * payload size (2), frame length (4) and capture time in ms on the robot's clock (8, -1 if unknown).
+ * The server learns where to send the packets from the hello packets (type 2 followed by the guid), which are
+ * repeated so that the mapping in any NAT in between stays open. **/
+public class UdpVideoReceiver extends Thread {
+    /** Called on the receiver thread for each frame that was completed. The data is not used afterwards. **/
+    public interface OnFrameReceivedListener {
+        void onFrameReceived(@NotNull byte[] data, long sequence, long captureTimeMs, long arrivalTimeMs);
+    }
+
+    /** Called on the receiver thread for each frame that was given up, as it was incomplete at its deadline
+     * or a newer frame was completed before it. **/
+    public interface OnFrameDroppedListener {
+        void onFrameDropped();
+    }
+
+    private static final int HEADER_SIZE = 26;
+    private static final int TYPE_DATA = 0;
+    private static final int TYPE_PARITY = 1;
+    private static final int TYPE_HELLO = 2;
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+    private static final int MAX_PACKETS = 2048;
+    private static final int MAX_FRAME_SIZE = 4 * 1024 * 1024;
+    private static final int ASSEMBLY_COUNT = 4;
+    private static final long FRAME_DEADLINE_MS = 150;
+    private static final long HELLO_INTERVAL_MS = 1000;
+    private static final long SELECT_TIMEOUT_MS = 10;
+    private static final long RESTART_SEQUENCE_GAP = 1000;
+
+    private final InetSocketAddress serverAddress;
+    private final byte[] guid;
+    private final OnFrameReceivedListener listener;
+    private final OnFrameDroppedListener dropListener;
+    private final ByteBuffer packet = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+    private final FrameAssembly[] assemblies = new FrameAssembly[ASSEMBLY_COUNT];
+    private volatile boolean running = true;
+    private Selector selector = null;
+    private long lastDeliveredSequence = -1;
+    private long lastHelloTime = -HELLO_INTERVAL_MS; // The first hello is sent right away
+
+    public UdpVideoReceiver(@NotNull InetSocketAddress serverAddress, @NotNull String guid,
+                            @NotNull OnFrameReceivedListener listener, @NotNull OnFrameDroppedListener dropListener) {
+        super("UdpVideoReceiver");
+        this.serverAddress = serverAddress;
+        this.guid = guid.getBytes(StandardCharsets.UTF_8);
+        this.listener = listener;
+        this.dropListener = dropListener;
+        for (int i = 0; i < ASSEMBLY_COUNT; i++) assemblies[i] = new FrameAssembly();
+    }
+
+    @Override
+    public void run() {
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.configureBlocking(false);
+            channel.connect(serverAddress);
+            synchronized (this) {
+                if (!running) return;
+                selector = Selector.open();
+            }
+            channel.register(selector, SelectionKey.OP_READ);
+            while (running) {
+                long now = elapsedRealtime();
+                if (now - lastHelloTime >= HELLO_INTERVAL_MS) {
+                    sendHello(channel);
+                    lastHelloTime = now;
+                }
+                selector.select(SELECT_TIMEOUT_MS);
+                selector.selectedKeys().clear();
+                while (true) {
+                    packet.clear();
+                    if (channel.receive(packet) == null) break;
+                    packet.flip();
+                    onPacketReceived(elapsedRealtime());
+                }
+                expireFrames(elapsedRealtime());
+            }
+        } catch (IOException e) {
+            Log.w("UdpVideoReceiver", "UDP video stopped: " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                try {
+                    if (selector != null) selector.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /** The clock that the frame deadlines and the hello interval are measured with, in ms. **/
+    long elapsedRealtime() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    private void sendHello(@NotNull DatagramChannel channel) throws IOException {
+        ByteBuffer hello = ByteBuffer.allocate(1 + guid.length);
+        hello.put((byte) TYPE_HELLO).put(guid).flip();
+        channel.write(hello);
+    }
+
+    /** Reads the packet in the packet buffer. Packets that do not match the header format are ignored. **/
+    private void onPacketReceived(long now) {
+        if (packet.remaining() < HEADER_SIZE) return;
+        int type = packet.get() & 0xFF;
+        packet.get();
+        long sequence = packet.getInt() & 0xFFFFFFFFL;
+        int index = packet.getShort() & 0xFFFF;
+        int dataCount = packet.getShort() & 0xFFFF;
+        int groupSize = packet.getShort() & 0xFFFF;
+        int payloadSize = packet.getShort() & 0xFFFF;
+        int frameLength = packet.getInt();
+        long captureTime = packet.getLong();
+        if ((type != TYPE_DATA && type != TYPE_PARITY) || payloadSize == 0 || groupSize == 0
+                || frameLength <= 0 || frameLength > MAX_FRAME_SIZE || dataCount > MAX_PACKETS
+                || dataCount != (frameLength + payloadSize - 1) / payloadSize) return;
+
+        if (lastDeliveredSequence >= 0 && sequence < lastDeliveredSequence - RESTART_SEQUENCE_GAP) {
+            // The robot restarted its stream
+            lastDeliveredSequence = -1;
+        }
+        // Packets of frames that were delivered or given up, including the parity that was not needed
+        if (sequence <= lastDeliveredSequence) return;
+        FrameAssembly assembly = getAssembly(sequence);
+        if (assembly == null) return;
+        if (assembly.sequence != sequence) {
+            assembly.start(sequence, frameLength, dataCount, groupSize, payloadSize, captureTime, now);
+        } else if (assembly.frameLength != frameLength || assembly.payloadSize != payloadSize
+                || assembly.groupSize != groupSize) {
+            return;
+        }
+
+        int group;
+        if (type == TYPE_DATA) {
+            if (index >= dataCount || assembly.received[index]) return;
+            int offset = index * payloadSize;
+            int length = Math.min(payloadSize, frameLength - offset);
+            if (packet.remaining() < length) return;
+            packet.get(assembly.data, offset, length);
+            assembly.received[index] = true;
+            assembly.receivedCount++;
+            group = index / groupSize;
+        } else {
+            if (index >= assembly.groupCount || assembly.parityReceived[index]
+                    || packet.remaining() < payloadSize) return;
+            packet.get(assembly.parity, index * payloadSize, payloadSize);
+            assembly.parityReceived[index] = true;
+            group = index;
+        }
+        assembly.recoverGroup(group);
+        if (assembly.receivedCount == assembly.dataCount) deliver(assembly, now);
+    }
+
+    /** Gets the assembly of the frame, or an unused one for a new frame. If all of them are in use, the oldest
+     * frame is given up for a newer frame, while a late packet of a frame older than all of them is refused with
+     * null, as that frame could only be discarded as reordered once completed. **/
+    @Nullable
+    private FrameAssembly getAssembly(long sequence) {
+        FrameAssembly free = null;
+        FrameAssembly oldest = null;
+        for (FrameAssembly assembly : assemblies) {
+            if (assembly.sequence == sequence) return assembly;
+            if (assembly.sequence < 0) free = assembly;
+            else if (oldest == null || assembly.sequence < oldest.sequence) oldest = assembly;
+        }
+        if (free != null) return free;
+        if (sequence < oldest.sequence) return null;
+        giveUpThrough(oldest.sequence);
+        return oldest;
+    }
+
+    private void deliver(@NotNull FrameAssembly assembly, long now) {
+        long sequence = assembly.sequence;
+        byte[] data = assembly.data;
+        long captureTime = assembly.captureTimeMs;
+        // The data is handed over, so the assembly starts the next frame with a new array
+        assembly.data = null;
+        assembly.sequence = -1;
+        // The frames before it would be discarded as reordered anyway
+        giveUpThrough(sequence);
+        listener.onFrameReceived(data, sequence, captureTime, now);
+    }
+
+    private void expireFrames(long now) {
+        for (FrameAssembly assembly : assemblies) {
+            if (assembly.sequence >= 0 && now - assembly.firstPacketTime > FRAME_DEADLINE_MS) {
+                giveUpThrough(assembly.sequence);
+            }
+        }
+    }
+
+    /** Gives up the incomplete frames up to the sequence, and ignores any packets of them that arrive later. **/
+    private void giveUpThrough(long sequence) {
+        for (FrameAssembly assembly : assemblies) {
+            if (assembly.sequence >= 0 && assembly.sequence <= sequence) {
+                assembly.sequence = -1;
+                dropListener.onFrameDropped();
+            }
+        }
+        lastDeliveredSequence = Math.max(lastDeliveredSequence, sequence);
+    }
+
+    /** Stops the thread, any incomplete frames are discarded. **/
+    public void quit() {
+        running = false;
+        synchronized (this) {
+            if (selector != null) selector.wakeup();
+        }
+    }
+
+    /** The packets of one frame that is being received. The arrays are kept between frames, apart from the
+     * frame data that is handed over when the frame is complete. **/
+    private static class FrameAssembly {
+        long sequence = -1;
+        byte[] data = null;
+        int frameLength;
+        int dataCount;
+        int groupSize;
+        int groupCount;
+        int payloadSize;
+        int receivedCount;
+        long captureTimeMs;
+        long firstPacketTime;
+        final boolean[] received = new boolean[MAX_PACKETS];
+        final boolean[] parityReceived = new boolean[MAX_PACKETS];
+        byte[] parity = new byte[0];
+
+        void start(long sequence, int frameLength, int dataCount, int groupSize, int payloadSize,
+                   long captureTimeMs, long now) {
+            this.sequence = sequence;
+            this.frameLength = frameLength;
+            this.dataCount = dataCount;
+            this.groupSize = groupSize;
+            this.groupCount = (dataCount + groupSize - 1) / groupSize;
+            this.payloadSize = payloadSize;
+            this.captureTimeMs = captureTimeMs;
+            this.firstPacketTime = now;
+            receivedCount = 0;
+            // The array is sized for the frame exactly, as it is passed on as the frame itself
+            if (data == null || data.length != frameLength) data = new byte[frameLength];
+            if (parity.length < groupCount * payloadSize) parity = new byte[groupCount * payloadSize];
+            for (int i = 0; i < dataCount; i++) received[i] = false;
+            for (int i = 0; i < groupCount; i++) parityReceived[i] = false;
+        }
+
+        /** Rebuilds the missing data packet of the group, if it is the only one missing and the parity arrived.
+         * The payloads are XORed as if they were padded to the payload size with zeroes. **/
+        void recoverGroup(int group) {
+            if (!parityReceived[group]) return;
+            int first = group * groupSize;
+            int end = Math.min(first + groupSize, dataCount);
+            int missing = -1;
+            for (int i = first; i < end; i++) {
+                if (received[i]) continue;
+                if (missing >= 0) return;
+                missing = i;
+            }
+            if (missing < 0) return;
+            int missingOffset = missing * payloadSize;
+            int missingLength = Math.min(payloadSize, frameLength - missingOffset);
+            int parityOffset = group * payloadSize;
+            for (int j = 0; j < missingLength; j++) {
+                int value = parity[parityOffset + j];
+                for (int i = first; i < end; i++) {
+                    if (i == missing) continue;
+                    int offset = i * payloadSize + j;
+                    if (offset < frameLength) value ^= data[offset];
+                }
+                data[missingOffset + j] = (byte) value;
+            }
+            received[missing] = true;
+            receivedCount++;
+        }
+    }
+}
@@ -19,6 +19,8 @@
 package io.github.unununium.fragment;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -30,8 +32,19 @@ import java.util.Locale;
 
 import io.github.unununium.R;
 import io.github.unununium.activity.MainActivity;
+import io.github.unununium.util.Constants;
 
 public class DiagnosticsOverlayFragment extends OverlayFragment {
+    private static final long VIDEO_STATS_INTERVAL = 500; // ms
+    private final Handler videoStatsHandler = new Handler(Looper.getMainLooper());
+    private final Runnable videoStatsUpdater = new Runnable() {
+        @Override
+        public void run() {
+            parentActivity.valueHandler.refreshVideoDiagnostics();
+            videoStatsHandler.postDelayed(this, VIDEO_STATS_INTERVAL);
+        }
+    };
+
     public DiagnosticsOverlayFragment() {
 
     }
@@ -52,6 +65,9 @@ public class DiagnosticsOverlayFragment extends OverlayFragment {
                 R.id.overlay_diag_front_obstacle, R.id.overlay_diag_back_obstacle, 
                 R.id.overlay_diag_co_level, R.id.overlay_diag_ch4_level, 
                 R.id.overlay_diag_h2_level, R.id.overlay_diag_lpg_level, 
+                R.id.overlay_diag_video_fps, R.id.overlay_diag_video_decode, R.id.overlay_diag_video_present,
+                R.id.overlay_diag_video_bitrate, R.id.overlay_diag_video_dropped, R.id.overlay_diag_video_copied,
+                R.id.overlay_diag_video_latency, R.id.overlay_diag_video_memory,
                 R.id.overlay_diag_server, R.id.overlay_diag_app_mode, R.id.overlay_diag_night_mode, 
                 R.id.overlay_diag_external_controller, R.id.overlay_diag_phone_mode,
                 R.id.overlay_diag_last_camera_rotation, R.id.overlay_diag_camera_x, 
@@ -68,11 +84,28 @@ public class DiagnosticsOverlayFragment extends OverlayFragment {
         // R.id.overlay_diag_robot_y, R.id.overlay_diag_robot_z
     }
 
+    /** Starts refreshing the video statistics while the overlay is shown. **/
+    @Override
+    public void onResume() {
+        super.onResume();
+        videoStatsHandler.post(videoStatsUpdater);
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        videoStatsHandler.removeCallbacks(videoStatsUpdater);
+    }
+
     /** Set the onClickListeners for the view. **/
     @Override
     protected void setViewListeners(@NotNull View view) {
         view.findViewById(R.id.overlay_diag_screenshot)
                 .setOnClickListener(v -> parentActivity.inputHandler.onScreenshot());
+        view.findViewById(R.id.overlay_diag_screenshot).setOnLongClickListener(v -> {
+            parentActivity.inputHandler.onToggleRewind();
+            return true;
+        });
         view.findViewById(R.id.overlay_diag_settings)
                 .setOnClickListener(v -> parentActivity.inputHandler.onToggleUpperOverlay());
     }
@@ -110,6 +143,8 @@ public class DiagnosticsOverlayFragment extends OverlayFragment {
                 String.format("Server1: %s", parentActivity.getString(parentActivity.remoteParams.getStateString())));
         ((TextView) returnView.findViewById(R.id.overlay_diag_app_mode)).setText(
                 String.format("Mode: %s", parentActivity.remoteParams.isOperator() ? "Operator" : "Observer"));
+        ((TextView) returnView.findViewById(R.id.overlay_diag_night_mode)).setText(String.format("%s%s",
+                Constants.CAMERA_NIGHT_MODE_PREFIX, parentActivity.localParams.nightMode ? "On" : "Off"));
         ((TextView) returnView.findViewById(R.id.overlay_diag_external_controller)).setText(""); // TODO: Complete
         ((TextView) returnView.findViewById(R.id.overlay_diag_phone_mode)).setText(""); // TODO: Complete
         ((TextView) returnView.findViewById(R.id.overlay_diag_last_camera_rotation))
@@ -52,11 +52,12 @@ public class NormalOverlayFragment extends OverlayFragment {
             super.textViewList = new int[]{ R.id.overlay_temp_text, R.id.overlay_humidity_text,
                     R.id.overlay_front_obstacle_text, R.id.overlay_back_obstacle_text, R.id.overlay_gas_text };
             super.imageViewList = new int[]{ R.id.overlay_text_moving, R.id.overlay_text_disconnected, 
-                    R.id.overlay_text_screenshot, R.id.overlay_text_settings };
-            super.dayImageResList = new int[]{ R.drawable.ic_car_50_day, 
-                    R.drawable.ic_cloud_off_50_day, R.drawable.ic_camera_50_day, R.drawable.ic_settings_50_day };
-            super.nightImageResList = new int[]{ R.drawable.ic_car_50_night, 
-                    R.drawable.ic_cloud_off_50_night, R.drawable.ic_camera_50_night, R.drawable.ic_settings_50_night };
+                    R.id.overlay_text_screenshot, R.id.overlay_text_settings, R.id.overlay_text_frozen };
+            super.dayImageResList = new int[]{ R.drawable.ic_car_50_day, R.drawable.ic_cloud_off_50_day,
+                    R.drawable.ic_camera_50_day, R.drawable.ic_settings_50_day, R.drawable.ic_videocam_off_50_day };
+            super.nightImageResList = new int[]{ R.drawable.ic_car_50_night, R.drawable.ic_cloud_off_50_night,
+                    R.drawable.ic_camera_50_night, R.drawable.ic_settings_50_night,
+                    R.drawable.ic_videocam_off_50_night };
             super.operatorOnlyList = new int[]{ R.id.overlay_text_moving, R.id.overlay_text_start_moving };
         } else {
             // The temperature and humidity icons' colour are not changed as there are multiple types of icons
@@ -65,17 +66,17 @@ public class NormalOverlayFragment extends OverlayFragment {
                     R.id.overlay_icon_screenshot, R.id.overlay_icon_settings, R.id.overlay_obstacle_icon, 
                     R.id.overlay_obstacle_front_icon, R.id.overlay_obstacle_back_icon, 
                     R.id.overlay_co_icon, R.id.overlay_ch4_icon, R.id.overlay_h2_icon, 
-                    R.id.overlay_lpg_icon };
+                    R.id.overlay_lpg_icon, R.id.overlay_icon_frozen };
             super.dayImageResList = new int[]{ R.drawable.ic_car_50_day, R.drawable.ic_cloud_off_50_day, 
                     R.drawable.ic_camera_50_day, R.drawable.ic_settings_50_day, R.drawable.ic_obstacle_day, 
                     R.drawable.ic_obstacle_front_day, R.drawable.ic_obstacle_back_day, 
                     R.drawable.ic_gas_co_day, R.drawable.ic_gas_ch4_day, 
-                    R.drawable.ic_gas_h2_day, R.drawable.ic_gas_lpg_day };
+                    R.drawable.ic_gas_h2_day, R.drawable.ic_gas_lpg_day, R.drawable.ic_videocam_off_50_day };
             super.nightImageResList = new int[]{ R.drawable.ic_car_50_night, R.drawable.ic_cloud_off_50_night,
                     R.drawable.ic_camera_50_night, R.drawable.ic_settings_50_night, R.drawable.ic_obstacle_night,
                     R.drawable.ic_obstacle_front_night, R.drawable.ic_obstacle_back_night,
                     R.drawable.ic_gas_co_night, R.drawable.ic_gas_ch4_night,
-                    R.drawable.ic_gas_h2_night, R.drawable.ic_gas_lpg_night };
+                    R.drawable.ic_gas_h2_night, R.drawable.ic_gas_lpg_night, R.drawable.ic_videocam_off_50_night };
             super.operatorOnlyList = new int[]{ R.id.overlay_icon_moving, R.id.overlay_icon_start_moving };
         }
     }
@@ -98,11 +99,19 @@ public class NormalOverlayFragment extends OverlayFragment {
         if (isText) {
             view.findViewById(R.id.overlay_text_screenshot)
                     .setOnClickListener(v -> parentActivity.inputHandler.onScreenshot());
+            view.findViewById(R.id.overlay_text_screenshot).setOnLongClickListener(v -> {
+                parentActivity.inputHandler.onToggleRewind();
+                return true;
+            });
             view.findViewById(R.id.overlay_text_settings)
                     .setOnClickListener(v -> parentActivity.inputHandler.onToggleUpperOverlay());
         } else {
             view.findViewById(R.id.overlay_icon_screenshot)
                     .setOnClickListener(v -> parentActivity.inputHandler.onScreenshot());
+            view.findViewById(R.id.overlay_icon_screenshot).setOnLongClickListener(v -> {
+                parentActivity.inputHandler.onToggleRewind();
+                return true;
+            });
             view.findViewById(R.id.overlay_icon_settings)
                     .setOnClickListener(v -> parentActivity.inputHandler.onToggleUpperOverlay());
         }
@@ -114,5 +123,6 @@ public class NormalOverlayFragment extends OverlayFragment {
         super.swapColour(isDay);
         if (!isText) parentActivity.valueHandler.refreshNormalIconPage();
         parentActivity.valueHandler.onStateChanged();
+        parentActivity.valueHandler.onFeedFrozenChanged();
     }
 }
\ No newline at end of file
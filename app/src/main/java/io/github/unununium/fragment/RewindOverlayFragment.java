@@ -0,0 +1,162 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.fragment;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.SeekBar;
+import android.widget.TextView;
+
+import org.jetbrains.annotations.NotNull;
+
+import io.github.unununium.R;
+import io.github.unununium.activity.MainActivity;
+import io.github.unununium.util.FragmentOnBackPressed;
+import io.github.unununium.video.RewindBuffer;
+
+/** Shows the frames kept in the rewind buffer, the frame shown is picked with the seek bar.
+ * Frames are only decoded when they are picked, on a separate thread, and only the last one picked is decoded
+ * if the seek bar is moved faster than they can be decoded. **/
+public class RewindOverlayFragment extends OverlayFragment implements FragmentOnBackPressed {
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private HandlerThread decodeThread = null;
+    private Handler decodeHandler = null;
+    private byte[] decodeBuffer = new byte[0];
+    private long oldestSequence = 0;
+    private long openedTime = 0;
+
+    public RewindOverlayFragment() {
+
+    }
+
+    public RewindOverlayFragment(MainActivity parentActivity, boolean initIsDay) {
+        super(parentActivity, initIsDay);
+    }
+
+    /** Sets the text and image resources. **/
+    @Override
+    protected void setIntLists() {
+        super.textViewList = new int[]{ R.id.overlay_rewind_time };
+    }
+
+    @Override
+    public View onCreateView(@NotNull LayoutInflater inflater, ViewGroup container,
+                             Bundle savedInstanceState) {
+        // Inflate the layout for this fragment
+        View returnView = inflater.inflate(R.layout.fragment_rewind_overlay, container, false);
+        setViewListeners(returnView);
+        // The range is fixed when the overlay is opened, newer frames can be seen by opening it again
+        RewindBuffer buffer = parentActivity.rewindBuffer;
+        oldestSequence = buffer.getOldestSequence();
+        openedTime = SystemClock.elapsedRealtime();
+        SeekBar seekBar = returnView.findViewById(R.id.overlay_rewind_seekbar);
+        int frameCount = (int) Math.max(0, buffer.getNewestSequence() - oldestSequence);
+        seekBar.setMax(frameCount);
+        seekBar.setProgress(frameCount);
+        return returnView;
+    }
+
+    /** Set the onClickListeners for the view. **/
+    @Override
+    protected void setViewListeners(@NotNull View view) {
+        view.findViewById(R.id.overlay_rewind_close)
+                .setOnClickListener(v -> parentActivity.inputHandler.onToggleRewind());
+        ((SeekBar) view.findViewById(R.id.overlay_rewind_seekbar)).setOnSeekBarChangeListener(
+                new SeekBar.OnSeekBarChangeListener() {
+                    @Override
+                    public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                        showFrame(oldestSequence + progress);
+                    }
+
+                    @Override
+                    public void onStartTrackingTouch(SeekBar seekBar) {
+
+                    }
+
+                    @Override
+                    public void onStopTrackingTouch(SeekBar seekBar) {
+
+                    }
+                });
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        decodeThread = new HandlerThread("RewindDecoder");
+        decodeThread.start();
+        decodeHandler = new Handler(decodeThread.getLooper());
+        View view = getView();
+        if (view != null) showFrame(oldestSequence
+                + ((SeekBar) view.findViewById(R.id.overlay_rewind_seekbar)).getProgress());
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        decodeThread.quit();
+        decodeThread = null;
+        decodeHandler = null;
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /** Decodes the frame on the decode thread, replacing any frame that is still waiting to be decoded. **/
+    private void showFrame(long sequence) {
+        Handler handler = decodeHandler;
+        if (handler == null) return;
+        handler.removeCallbacksAndMessages(null);
+        handler.post(() -> decodeFrame(sequence));
+    }
+
+    /** Runs on the decode thread. Frames that were overwritten since the overlay was opened are replaced by
+     * the oldest frame that is still in the buffer. **/
+    private void decodeFrame(long sequence) {
+        RewindBuffer buffer = parentActivity.rewindBuffer;
+        long target = Math.max(sequence, buffer.getOldestSequence());
+        int length = buffer.getFrameLength(target);
+        if (length < 0) return;
+        if (decodeBuffer.length < length) decodeBuffer = new byte[length];
+        long arrivalTime = buffer.getArrivalTime(target);
+        if (buffer.copyFrame(target, decodeBuffer) < 0) return;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(decodeBuffer, 0, length);
+        if (bitmap == null) return;
+        mainHandler.post(() -> {
+            View view = getView();
+            if (view == null) return;
+            ((ImageView) view.findViewById(R.id.overlay_rewind_image)).setImageBitmap(bitmap);
+            ((TextView) view.findViewById(R.id.overlay_rewind_time)).setText(
+                    parentActivity.getString(R.string.rewind_time, (openedTime - arrivalTime) / 1000f));
+        });
+    }
+
+    @Override
+    public boolean onBackPressed() {
+        parentActivity.inputHandler.onToggleRewind();
+        return false;
+    }
+}
@@ -87,6 +87,38 @@ public class SettingsOverlayFragment extends PreferenceFragmentCompat implements
             parentActivity.localParams.isDay = !parentActivity.localParams.isDay;
         if (switchPrefValueChanged("pref_display_icons", !parentActivity.localParams.normalOverlayIsText))
             parentActivity.localParams.normalOverlayIsText = !parentActivity.localParams.normalOverlayIsText;
+        if (switchPrefValueChanged("pref_stereo_mode", parentActivity.localParams.stereoMode))
+            parentActivity.localParams.stereoMode = !parentActivity.localParams.stereoMode;
+        if (switchPrefValueChanged("pref_lens_distortion", parentActivity.localParams.lensDistortion))
+            parentActivity.localParams.lensDistortion = !parentActivity.localParams.lensDistortion;
+        if (switchPrefValueChanged("pref_edge_overlay", parentActivity.localParams.edgeOverlay))
+            parentActivity.localParams.edgeOverlay = !parentActivity.localParams.edgeOverlay;
+        if (switchPrefValueChanged("pref_stabilization", parentActivity.localParams.stabilization))
+            parentActivity.localParams.stabilization = !parentActivity.localParams.stabilization;
+        if (switchPrefValueChanged("pref_udp_video", parentActivity.localParams.udpVideo)) {
+            parentActivity.localParams.udpVideo = !parentActivity.localParams.udpVideo;
+            parentActivity.serverConnection.setUdpVideo(parentActivity.localParams.udpVideo);
+        }
+        if (switchPrefValueChanged("pref_latency_measurement", parentActivity.localParams.latencyMeasurement)) {
+            parentActivity.localParams.latencyMeasurement = !parentActivity.localParams.latencyMeasurement;
+            if (parentActivity.cameraView != null)
+                parentActivity.cameraView.setLatencyMeasurement(parentActivity.localParams.latencyMeasurement);
+            // The histograms of the measurement that just ended are saved
+            if (!parentActivity.localParams.latencyMeasurement) parentActivity.inputHandler.onSaveLatencyHistograms();
+        }
+        if (parentActivity.cameraView != null) {
+            parentActivity.cameraView.setStereoMode(parentActivity.localParams.stereoMode,
+                    parentActivity.localParams.lensDistortion);
+            parentActivity.cameraView.setEdgeOverlay(parentActivity.localParams.edgeOverlay);
+            parentActivity.cameraView.setStabilization(parentActivity.localParams.stabilization);
+        }
+        ListPreference rewindBufferPref = findPreference("pref_rewind_buffer");
+        parentActivity.localParams.rewindBufferMb =
+                Integer.parseInt(Objects.requireNonNull(rewindBufferPref).getValue());
+        parentActivity.memoryBudget.applyRewindCapacity();
+        ListPreference screenshotFormatPref = findPreference("pref_screenshot_format");
+        parentActivity.localParams.screenshotFormat = LocalParameters.ScreenshotFormat.values()[
+                Integer.parseInt(Objects.requireNonNull(screenshotFormatPref).getValue())];
         if (switchPrefValueChanged("pref_diagnostics", parentActivity.localParams.diagnosticsModeEnabled))
             parentActivity.localParams.diagnosticsModeEnabled = !parentActivity.localParams.diagnosticsModeEnabled;
         parentActivity.localParams.lowerTempBound =
@@ -123,6 +155,12 @@ public class SettingsOverlayFragment extends PreferenceFragmentCompat implements
                 Objects.requireNonNull(externalControllerPref).isChecked();
         SwitchPreference startMovingPref = findPreference("pref_start_moving");
         parentActivity.serverConnection.setMoving(Objects.requireNonNull(startMovingPref).isChecked());
+        SwitchPreference nightModePref = findPreference("pref_night_mode");
+        parentActivity.localParams.nightMode = Objects.requireNonNull(nightModePref).isChecked();
+        SwitchPreference nightEqualizationPref = findPreference("pref_night_equalization");
+        parentActivity.localParams.nightEqualization = Objects.requireNonNull(nightEqualizationPref).isChecked();
+        if (parentActivity.cameraView != null) parentActivity.cameraView.setNightMode(
+                parentActivity.localParams.nightMode, parentActivity.localParams.nightEqualization);
     }
 
     private boolean switchPrefValueChanged(String key, boolean compare) {
@@ -160,6 +198,22 @@ public class SettingsOverlayFragment extends PreferenceFragmentCompat implements
                 .setChecked(!parentActivity.localParams.isDay);
         ((SwitchPreference) Objects.requireNonNull(findPreference("pref_display_icons")))
                 .setChecked(!parentActivity.localParams.normalOverlayIsText);
+        ((SwitchPreference) Objects.requireNonNull(findPreference("pref_stereo_mode")))
+                .setChecked(parentActivity.localParams.stereoMode);
+        ((SwitchPreference) Objects.requireNonNull(findPreference("pref_lens_distortion")))
+                .setChecked(parentActivity.localParams.lensDistortion);
+        ((SwitchPreference) Objects.requireNonNull(findPreference("pref_edge_overlay")))
+                .setChecked(parentActivity.localParams.edgeOverlay);
+        ((SwitchPreference) Objects.requireNonNull(findPreference("pref_stabilization")))
+                .setChecked(parentActivity.localParams.stabilization);
+        ((SwitchPreference) Objects.requireNonNull(findPreference("pref_udp_video")))
+                .setChecked(parentActivity.localParams.udpVideo);
+        ((SwitchPreference) Objects.requireNonNull(findPreference("pref_latency_measurement")))
+                .setChecked(parentActivity.localParams.latencyMeasurement);
+        ((ListPreference) Objects.requireNonNull(findPreference("pref_rewind_buffer")))
+                .setValue(String.valueOf(parentActivity.localParams.rewindBufferMb));
+        ((ListPreference) Objects.requireNonNull(findPreference("pref_screenshot_format")))
+                .setValueIndex(parentActivity.localParams.screenshotFormat.ordinal());
         ((SwitchPreference) Objects.requireNonNull(findPreference("pref_diagnostics")))
                 .setChecked(parentActivity.localParams.diagnosticsModeEnabled);
 
@@ -196,9 +250,9 @@ public class SettingsOverlayFragment extends PreferenceFragmentCompat implements
         ((SwitchPreference) Objects.requireNonNull(findPreference("pref_start_moving")))
                 .setChecked(parentActivity.remoteParams.isMoving());
         ((SwitchPreference) Objects.requireNonNull(findPreference("pref_night_mode")))
-                .setChecked(false);
-        ((SwitchPreference) Objects.requireNonNull(findPreference("pref_night_mode")))
-                .setEnabled(false);
+                .setChecked(parentActivity.localParams.nightMode);
+        ((SwitchPreference) Objects.requireNonNull(findPreference("pref_night_equalization")))
+                .setChecked(parentActivity.localParams.nightEqualization);
     }
 
     @Override
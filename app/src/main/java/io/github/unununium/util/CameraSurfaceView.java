@@ -18,72 +18,291 @@
 
 package io.github.unununium.util;
 
+import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.Paint;
-import android.os.Environment;
 import android.util.AttributeSet;
-import android.util.Log;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.SurfaceHolder;
 import android.view.SurfaceView;
-import android.widget.Toast;
-
-import org.jcodec.api.FrameGrab;
-import org.jcodec.api.JCodecException;
-import org.jcodec.api.UnsupportedFormatException;
-import org.jcodec.common.io.ByteBufferSeekableByteChannel;
-import org.jcodec.common.io.FileChannelWrapper;
-import org.jcodec.common.model.Picture;
-import org.jetbrains.annotations.NotNull;
-
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
 
-import io.github.unununium.R;
+import org.jetbrains.annotations.NotNull;
 
-import static android.graphics.Bitmap.Config.ARGB_8888;
+import io.github.unununium.video.BitmapPool;
+import io.github.unununium.video.EdgeDetector;
+import io.github.unununium.video.FrameDecodeThread;
+import io.github.unununium.video.FrameRenderThread;
+import io.github.unununium.video.FrameSlot;
+import io.github.unununium.video.FrameTransform;
+import io.github.unununium.video.FrozenFeedDetector;
+import io.github.unununium.video.GlassToGlassMeter;
+import io.github.unununium.video.JitterBuffer;
+import io.github.unununium.video.JpegDecoderPool;
+import io.github.unununium.video.VideoFrame;
+import io.github.unununium.video.VideoStats;
 
-/** A custom SurfaceView to draw footage from the latest frame. **/
-public class CameraSurfaceView extends SurfaceView {
+/** A custom SurfaceView to draw footage from the latest frame.
+ * Frames wait compressed in the jitter buffer, and are decoded by a decoder pool once they are due. The decode
+ * thread then passes them on in order, and the newest one is drawn on a render thread once per display refresh.
+ * The threads only exist while the surface does. **/
+public class CameraSurfaceView extends SurfaceView implements SurfaceHolder.Callback {
+    private final VideoStats videoStats = new VideoStats();
+    // One bitmap is on screen while the next ones are decoded by the workers of the decoder pool
+    private final BitmapPool bitmapPool = new BitmapPool(4);
+    private final JitterBuffer jitterBuffer = new JitterBuffer(Constants.BUFFER_FOR_PLAYBACK,
+            Constants.BUFFER_FOR_PLAYBACK_AFTER_REBUFFER, frame -> {
+        videoStats.onFrameDropped();
+        bitmapPool.release(frame.bitmap);
+    });
+    private final FrameTransform frameTransform = new FrameTransform();
+    private JpegDecoderPool decoderPool = null;
+    private volatile FrozenFeedDetector.OnFrozenChangedListener onFeedFrozenListener = null;
+    private final FrozenFeedDetector frozenFeedDetector = new FrozenFeedDetector(frozen -> {
+        FrozenFeedDetector.OnFrozenChangedListener listener = onFeedFrozenListener;
+        if (listener != null) listener.onFrozenChanged(frozen);
+    });
+    // The newest decoded frame, waiting for the next vsync
+    private final FrameSlot<VideoFrame> presentSlot = new FrameSlot<>();
+    private final GlassToGlassMeter latencyMeter = new GlassToGlassMeter();
+    private FrameDecodeThread decodeThread = null;
+    private EdgeDetector edgeDetector = null;
+    private FrameRenderThread renderThread = null;
+    private boolean filterBitmap = true;
+    private volatile boolean useRgb565 = false;
+    private boolean lensDistortion = false;
+    private boolean nightMode = false;
+    private boolean nightEqualization = true;
+    private boolean edgeOverlay = false;
+    private boolean stabilization = false;
+    private FrameRenderThread.OnFramePresentedListener onFramePresentedListener = null;
+    private ScaleGestureDetector scaleDetector;
+    private GestureDetector gestureDetector;
 
     public CameraSurfaceView(Context context) {
         super(context);
+        init(context);
     }
 
     public CameraSurfaceView(Context context, AttributeSet attrs) {
         super(context, attrs);
+        init(context);
     }
 
     public CameraSurfaceView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
+        init(context);
+    }
+
+    private void init(Context context) {
+        getHolder().addCallback(this);
+        // Pinch to zoom into the feed, drag to pan around it and double tap to zoom back out
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                frameTransform.zoomBy(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                return true;
+            }
+        });
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                frameTransform.panBy(distanceX, distanceY);
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent e) {
+                frameTransform.resetZoom();
+                return true;
+            }
+        });
+    }
+
+    @SuppressLint("ClickableViewAccessibility")
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = scaleDetector.onTouchEvent(event);
+        // Panning while pinching would move the frame twice
+        if (!scaleDetector.isInProgress()) handled |= gestureDetector.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
     }
 
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
+        frameTransform.setViewSize(w, h);
     }
 
-    public void setCurrentImage(byte[] buffer) {
-        Canvas canvas = getHolder().lockCanvas();
-        if (canvas != null) {
-            Bitmap currentBitmap = BitmapFactory.decodeByteArray(buffer, 0, buffer.length);
-            float ar = canvas.getHeight() * 1.0f / currentBitmap.getScaledHeight(canvas);
-            Bitmap rescaledBitmap = Bitmap.createScaledBitmap(currentBitmap,
-                    (int) (ar * currentBitmap.getScaledWidth(canvas)), getHeight(), false);
-            float left = (canvas.getWidth() - rescaledBitmap.getScaledWidth(canvas)) / 2f;
-            canvas.drawBitmap(rescaledBitmap, left, 0, new Paint());
-            getHolder().unlockCanvasAndPost(canvas);
-        }
+    /** Sets whether the frames are filtered when they are scaled to the size of the view. **/
+    public void setFilterBitmap(boolean filterBitmap) {
+        this.filterBitmap = filterBitmap;
+        if (renderThread != null) renderThread.setFilterBitmap(filterBitmap);
+    }
+
+    /** Sets whether frames are decoded as RGB_565 instead of ARGB_8888, which halves the memory used.
+     * The camera feed is always opaque, so only some colour depth is lost. **/
+    public void setUseRgb565(boolean useRgb565) {
+        this.useRgb565 = useRgb565;
+        if (decoderPool != null) decoderPool.setUseRgb565(useRgb565);
+    }
+
+    /** Sets whether the feed is split into a left and a right eye for a headset.
+     * The lens distortion only applies in stereo mode, and pre-distorts each eye for the lenses of the headset. **/
+    public void setStereoMode(boolean stereo, boolean lensDistortion) {
+        frameTransform.setStereo(stereo);
+        this.lensDistortion = lensDistortion;
+        if (renderThread != null) renderThread.setLensDistortion(lensDistortion);
+    }
+
+    /** Sets whether the feed is brightened for low light, see NightVisionFilter. **/
+    public void setNightMode(boolean nightMode, boolean equalization) {
+        this.nightMode = nightMode;
+        this.nightEqualization = equalization;
+        if (decodeThread != null) decodeThread.setNightMode(nightMode, equalization);
+    }
+
+    /** Sets whether the edges in the feed are highlighted, see EdgeDetector. **/
+    public void setEdgeOverlay(boolean edgeOverlay) {
+        this.edgeOverlay = edgeOverlay;
+        if (edgeDetector != null) edgeDetector.setEnabled(edgeOverlay);
+    }
+
+    /** Sets whether camera shake is cancelled out, see FrameStabilizer. **/
+    public void setStabilization(boolean stabilization) {
+        this.stabilization = stabilization;
+        if (decodeThread != null) decodeThread.setStabilization(stabilization);
+        if (renderThread != null) renderThread.setStabilization(stabilization);
+    }
+
+    /** Sets whether the glass-to-glass latency is measured from the timestamp pattern in the frames,
+     * see GlassToGlassMeter. **/
+    public void setLatencyMeasurement(boolean latencyMeasurement) {
+        latencyMeter.setEnabled(latencyMeasurement);
+    }
+
+    /** Sets the listener for when the camera feed freezes or recovers, which is called from the decode thread. **/
+    public void setOnFeedFrozenListener(FrozenFeedDetector.OnFrozenChangedListener listener) {
+        onFeedFrozenListener = listener;
+    }
+
+    /** Sets the listener for each new frame that is presented, which is called from the render thread. **/
+    public void setOnFramePresentedListener(FrameRenderThread.OnFramePresentedListener listener) {
+        onFramePresentedListener = listener;
+        if (renderThread != null) renderThread.setOnFramePresentedListener(listener);
+    }
+
+    /** Hands the frame over to the render thread through the jitter buffer. Safe to call from any thread.
+     * If a newer frame is due by the time this one is, it is dropped in favour of the newer one.
+     * The capture time is on the robot's clock, or -1 if it is unknown. The caller is responsible for counting
+     * the received frame, as it may have filtered out others. **/
+    public void setCurrentImage(byte[] buffer, long captureTimeMs, long arrivalTimeMs) {
+        jitterBuffer.push(VideoFrame.fromJpeg(buffer, captureTimeMs, arrivalTimeMs));
+    }
+
+    /** Hands a frame that has already been decoded to the render thread. Safe to call from any thread.
+     * The bitmap must have been acquired from the pool of this view, and is owned by the view afterwards. **/
+    public void setDecodedImage(Bitmap bitmap) {
+        jitterBuffer.push(VideoFrame.fromBitmap(bitmap));
+    }
+
+    /** Sets the bounds of the playout delay in ms. Both being 0 shows every frame as soon as possible,
+     * which is what the operator needs to control the robot. **/
+    public void setPlayoutDelayBounds(long minDelayMs, long maxDelayMs) {
+        jitterBuffer.setDelayBounds(minDelayMs, maxDelayMs);
+    }
+
+    public JitterBuffer getJitterBuffer() {
+        return jitterBuffer;
+    }
+
+    public VideoStats getVideoStats() {
+        return videoStats;
+    }
+
+    public GlassToGlassMeter getLatencyMeter() {
+        return latencyMeter;
+    }
+
+    public BitmapPool getBitmapPool() {
+        return bitmapPool;
+    }
+
+    public FrozenFeedDetector getFrozenFeedDetector() {
+        return frozenFeedDetector;
+    }
+
+    public boolean isFeedFrozen() {
+        return frozenFeedDetector.isFrozen();
+    }
+
+    public FrameTransform getFrameTransform() {
+        return frameTransform;
+    }
+
+    public boolean isUseRgb565() {
+        return useRgb565;
+    }
+
+    @Override
+    public void surfaceCreated(@NotNull SurfaceHolder holder) {
+        jitterBuffer.reopen();
+        presentSlot.reopen();
+        edgeDetector = new EdgeDetector();
+        edgeDetector.setEnabled(edgeOverlay);
+        // The frames stay compressed in the jitter buffer, and are only decoded once they are due
+        decoderPool = new JpegDecoderPool(jitterBuffer, bitmapPool, frameTransform, videoStats);
+        decoderPool.setUseRgb565(useRgb565);
+        decodeThread = new FrameDecodeThread(decoderPool, presentSlot, videoStats, bitmapPool, frozenFeedDetector,
+                edgeDetector);
+        decodeThread.setNightMode(nightMode, nightEqualization);
+        decodeThread.setStabilization(stabilization);
+        renderThread = new FrameRenderThread(holder, presentSlot, videoStats, bitmapPool, frameTransform,
+                edgeDetector, latencyMeter);
+        renderThread.setFilterBitmap(filterBitmap);
+        renderThread.setLensDistortion(lensDistortion);
+        renderThread.setStabilization(stabilization);
+        renderThread.setOnFramePresentedListener(onFramePresentedListener);
+        edgeDetector.start();
+        decoderPool.start();
+        decodeThread.start();
+        renderThread.start();
     }
 
     @Override
-    public void draw(Canvas canvas) {
-        super.draw(canvas);
+    public void surfaceChanged(@NotNull SurfaceHolder holder, int format, int width, int height) {
+        frameTransform.setViewSize(width, height);
+    }
+
+    @Override
+    public void surfaceDestroyed(@NotNull SurfaceHolder holder) {
+        // The render thread must stop drawing before the surface is released
+        jitterBuffer.close();
+        if (decoderPool != null) {
+            decoderPool.quit();
+            decoderPool = null;
+        }
+        if (decodeThread != null) {
+            decodeThread.quit();
+            decodeThread = null;
+        }
+        if (renderThread != null) {
+            renderThread.quit();
+            renderThread = null;
+        }
+        if (edgeDetector != null) {
+            edgeDetector.quit();
+            edgeDetector = null;
+        }
+        VideoFrame pending = presentSlot.poll();
+        if (pending != null) bitmapPool.release(pending.bitmap);
+        presentSlot.close();
+        bitmapPool.clear();
     }
 }
@@ -30,6 +30,7 @@ public class Constants {
         TYPE_NORMAL_TEXT,
         TYPE_NORMAL_ICON,
         TYPE_SETTINGS,
+        TYPE_REWIND,
         TYPE_NONE
     }
 
@@ -28,9 +28,12 @@ import androidx.annotation.NonNull;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.io.IOException;
 
 /** Static functions that are used throughout the app. **/
 public class GeneralFunctions {
+    private static String screenshotsDir = null;
+
     private GeneralFunctions() {
         throw new IllegalStateException("Utility class");
     }
@@ -48,9 +51,20 @@ public class GeneralFunctions {
      * Then, it falls back to the download directory.
      * The download directory is assumed to be /storage/emulated/0/Download or /storage/emulated/0/Downloads.
      * If it doesn't exist, it falls back to getInternalScreenshotsDir.
+     * The directory is only looked for again if the one found before can no longer be written to.
      * The path will always end in '/'. **/
     @NonNull
-    public static String getExternalScreenshotsDir(@NonNull Context context) {
+    public static synchronized String getExternalScreenshotsDir(@NonNull Context context) {
+        if (screenshotsDir != null) {
+            File cachedDir = new File(screenshotsDir);
+            if (cachedDir.isDirectory() && cachedDir.canWrite()) return screenshotsDir;
+        }
+        screenshotsDir = findExternalScreenshotsDir(context);
+        return screenshotsDir;
+    }
+
+    @NonNull
+    private static String findExternalScreenshotsDir(@NonNull Context context) {
         File[] externalDirList = new File[]{ new File(Environment
                 .getExternalStoragePublicDirectory(Environment.DIRECTORY_DCIM).getAbsolutePath() + "/Screenshots"),
                 new File(Environment.getExternalStoragePublicDirectory(Environment
@@ -80,20 +94,23 @@ public class GeneralFunctions {
                 context.getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS),
                 context.getExternalFilesDir(Environment.DIRECTORY_DOWNLOADS) };
         for (File file: internalDirList) {
-            if (file != null) return file.getAbsolutePath();
+            if (file != null) return file.getAbsolutePath() + "/";
         }
         return "/storage/emulated/0/";
     }
 
-    /** Generates a valid file in the required directory.
+    /** Creates a new empty file in the required directory.
      * If a file with the same name exists,
      * a file with incrementing number will be added to the file.
+     * The file is created atomically, so two files being saved at once would not get the same name.
      * @param extension needs to include the . at the front.**/
-    public static String generateValidFile(String filename, String extension) {
-        String returnFile = filename + extension;
+    @NotNull
+    public static File createValidFile(String filename, String extension) throws IOException {
+        File returnFile = new File(filename + extension);
         int i = 1;
-        while (new File(returnFile).exists() && i < Integer.MAX_VALUE) {
-            returnFile = filename + "(" + i + ")" + extension;
+        while (!returnFile.createNewFile()) {
+            if (i == Integer.MAX_VALUE) throw new IOException("No valid file name for " + filename);
+            returnFile = new File(filename + "(" + i + ")" + extension);
             i++;
         }
         return returnFile;
@@ -19,52 +19,201 @@
 package io.github.unununium.util;
 
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.Build;
+import android.view.View;
 import android.widget.Toast;
 
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import io.github.unununium.R;
 import io.github.unununium.activity.MainActivity;
+import io.github.unununium.comm.LocalParameters;
 import io.github.unununium.fragment.OverlayFragment;
+import io.github.unununium.fragment.RewindOverlayFragment;
+import io.github.unununium.video.GlassToGlassMeter;
+import io.github.unununium.video.SessionRecorder;
 
 /** An extension to MainActivity that handles the input received by buttons and controllers. **/
 public class InputHandler {
+    private static final int WEBP_QUALITY = 90;
+
     private final MainActivity parent;
+    private final ExecutorService screenshotExecutor = Executors.newSingleThreadExecutor();
 
     public InputHandler(MainActivity parent) {
         this.parent = parent;
     }
 
-    /** When a screenshot command is received. Takes a "screenshot" of the FrameLayout and saves it
-     * as a bitmap image. **/
+    /** Stops the thread that saves files after the queued ones are written. Called when the activity is destroyed,
+     * as each new activity creates its own handler. **/
+    public void shutdown() {
+        screenshotExecutor.shutdown();
+    }
+
+    /** When a screenshot command is received. Saves the last frame that was received from the server.
+     * By default the frame is written as the JPEG it was received as, otherwise it is decoded, drawn with the
+     * overlay on top and compressed. Only drawing the overlay is done on the UI thread. **/
     public void onScreenshot() {
-        CameraSurfaceView outputView = parent.findViewById(R.id.m1_playerview);
-        Date currentDate = new Date();
-        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd_hhmmss", Locale.ENGLISH);
-        String filePath = String.format("%s%s",
-                GeneralFunctions.getExternalScreenshotsDir(parent), format.format(currentDate));
-        String generatedFilePath = GeneralFunctions
-                .generateValidFile(filePath, ".png");
-        // Writes the bitmap to the file, checks whether the path is valid in the process
-        try (FileOutputStream out = new FileOutputStream(generatedFilePath)) {
-            Bitmap outputBitmap = outputView.getDrawingCache();
-            if (outputBitmap != null) {
-                outputBitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
-                Toast.makeText(parent, String.format("%s%s", "File saved to ", generatedFilePath),
-                        Toast.LENGTH_LONG).show();
+        byte[] frame = parent.serverConnection == null ? null : parent.serverConnection.getLatestJpegFrame();
+        if (frame == null) {
+            Toast.makeText(parent, "No footage available", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        LocalParameters.ScreenshotFormat format = parent.localParams.screenshotFormat;
+        Bitmap overlay = format == LocalParameters.ScreenshotFormat.JPEG ? null : drawOverlay();
+        String fileName = new SimpleDateFormat("yyyyMMdd_hhmmss", Locale.ENGLISH).format(new Date());
+        screenshotExecutor.execute(() -> saveScreenshot(frame, overlay, format, fileName));
+    }
+
+    /** Draws the overlay fragment into a bitmap of the size of the screen, or returns null if it is not shown. **/
+    @Nullable
+    private Bitmap drawOverlay() {
+        View overlayView = parent.findViewById(R.id.m1_overlay);
+        if (overlayView.getWidth() == 0 || overlayView.getHeight() == 0) return null;
+        Bitmap overlay = Bitmap.createBitmap(overlayView.getWidth(), overlayView.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        overlayView.draw(new Canvas(overlay));
+        return overlay;
+    }
+
+    /** Runs on the screenshot executor. **/
+    private void saveScreenshot(@NotNull byte[] frame, @Nullable Bitmap overlay,
+                                @NotNull LocalParameters.ScreenshotFormat format, @NotNull String fileName) {
+        String filePath = GeneralFunctions.getExternalScreenshotsDir(parent) + fileName;
+        try {
+            File file;
+            if (format == LocalParameters.ScreenshotFormat.JPEG) {
+                file = GeneralFunctions.createValidFile(filePath, ".jpg");
+                try (FileOutputStream out = new FileOutputStream(file)) {
+                    out.write(frame);
+                }
             } else {
-                Toast.makeText(parent, "No footage available", Toast.LENGTH_SHORT).show();
+                Bitmap image = composeScreenshot(frame, overlay);
+                if (image == null) throw new IOException("Unable to decode the frame");
+                boolean png = format == LocalParameters.ScreenshotFormat.PNG;
+                file = GeneralFunctions.createValidFile(filePath, png ? ".png" : ".webp");
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                    image.compress(png ? Bitmap.CompressFormat.PNG : getWebpFormat(), png ? 100 : WEBP_QUALITY, out);
+                } finally {
+                    image.recycle();
+                }
             }
-        } catch (NullPointerException | IOException e) {
-            Toast.makeText(parent, e.getMessage(), Toast.LENGTH_SHORT).show();
+            parent.runOnUiThread(() -> Toast.makeText(parent, String.format("%s%s", "File saved to ",
+                    file.getPath()), Toast.LENGTH_LONG).show());
+        } catch (IOException e) {
+            parent.runOnUiThread(() -> Toast.makeText(parent, e.getMessage(), Toast.LENGTH_SHORT).show());
             e.printStackTrace();
         }
     }
 
+    /** Decodes the frame and draws the overlay over it, with the frame letterboxed as it is on the screen. **/
+    @Nullable
+    private static Bitmap composeScreenshot(@NotNull byte[] frame, @Nullable Bitmap overlay) {
+        Bitmap decoded = BitmapFactory.decodeByteArray(frame, 0, frame.length);
+        if (decoded == null || overlay == null) return decoded;
+        Bitmap image = Bitmap.createBitmap(overlay.getWidth(), overlay.getHeight(), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(image);
+        canvas.drawColor(Color.BLACK);
+        Matrix matrix = new Matrix();
+        matrix.setRectToRect(new RectF(0, 0, decoded.getWidth(), decoded.getHeight()),
+                new RectF(0, 0, image.getWidth(), image.getHeight()), Matrix.ScaleToFit.CENTER);
+        canvas.drawBitmap(decoded, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        canvas.drawBitmap(overlay, 0, 0, null);
+        decoded.recycle();
+        overlay.recycle();
+        return image;
+    }
+
+    @SuppressWarnings("deprecation")
+    @NotNull
+    private static Bitmap.CompressFormat getWebpFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? Bitmap.CompressFormat.WEBP_LOSSY
+                : Bitmap.CompressFormat.WEBP;
+    }
+
+    /** Saves the latency histograms of the measurement as CSV in the screenshots directory, see GlassToGlassMeter.
+     * The histograms are copied out on the UI thread, so a new measurement does not change what is written. **/
+    public void onSaveLatencyHistograms() {
+        if (parent.cameraView == null) return;
+        GlassToGlassMeter meter = parent.cameraView.getLatencyMeter();
+        if (meter.getFramesMeasured() == 0) {
+            Toast.makeText(parent, meter.isClockSynchronized() ? "No timestamp pattern found in the video"
+                    : "Clock not synchronized with the server", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        StringWriter csv = new StringWriter();
+        try {
+            meter.writeCsv(csv);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        String filePath = String.format("%slatency_%s", GeneralFunctions.getExternalScreenshotsDir(parent),
+                new SimpleDateFormat("yyyyMMdd_hhmmss", Locale.ENGLISH).format(new Date()));
+        screenshotExecutor.execute(() -> {
+            try {
+                File file = GeneralFunctions.createValidFile(filePath, ".csv");
+                try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                    writer.write(csv.toString());
+                }
+                parent.runOnUiThread(() -> Toast.makeText(parent, String.format("%s%s",
+                        "Latency histograms saved to ", file.getPath()), Toast.LENGTH_LONG).show());
+            } catch (IOException e) {
+                parent.runOnUiThread(() -> Toast.makeText(parent, e.getMessage(), Toast.LENGTH_SHORT).show());
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /** When the command to start or stop recording is received. The received frames are written to a video file
+     * in the screenshots directory on a background thread, which shows where it was saved once the file is closed. **/
+    public void onToggleRecording() {
+        SessionRecorder recorder = parent.sessionRecorder;
+        if (recorder != null) {
+            parent.sessionRecorder = null;
+            recorder.finish();
+        } else {
+            SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd_hhmmss", Locale.ENGLISH);
+            String filePath = String.format("%s%s",
+                    GeneralFunctions.getExternalScreenshotsDir(parent), format.format(new Date()));
+            try {
+                recorder = new SessionRecorder(GeneralFunctions.createValidFile(filePath, ".mp4"),
+                        (finished, saved) -> parent.runOnUiThread(() -> Toast.makeText(parent, saved
+                                ? String.format("%s%s", "Recording saved to ", finished.getFile().getPath())
+                                : "Recording could not be saved", Toast.LENGTH_LONG).show()));
+            } catch (IOException e) {
+                Toast.makeText(parent, e.getMessage(), Toast.LENGTH_SHORT).show();
+                e.printStackTrace();
+                return;
+            }
+            recorder.start();
+            parent.sessionRecorder = recorder;
+            Toast.makeText(parent, "Recording started", Toast.LENGTH_SHORT).show();
+        }
+    }
+
     /** When the command to invert the colour of the UI is called. **/
     public void onInvertColour() {
         parent.localParams.isDay = !parent.localParams.isDay;
@@ -91,6 +240,17 @@ public class InputHandler {
         }
     }
 
+    /** When the command to look back at the last received frames is called, or to return to the live feed. **/
+    public void onToggleRewind() {
+        if (parent.currentFragment instanceof RewindOverlayFragment) {
+            showCurrentFragment();
+        } else if (parent.rewindBuffer.getNewestSequence() < parent.rewindBuffer.getOldestSequence()) {
+            Toast.makeText(parent, R.string.rewind_empty, Toast.LENGTH_SHORT).show();
+        } else {
+            parent.showOverlay(Constants.OverlayType.TYPE_REWIND);
+        }
+    }
+
     /** When the command to toggle the diagnostics mode is called. **/
     public void onToggleDiagnosticsMode() {
         parent.localParams.diagnosticsModeEnabled = !parent.localParams.diagnosticsModeEnabled;
@@ -0,0 +1,158 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.util;
+
+import android.content.ComponentCallbacks2;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.jetbrains.annotations.NotNull;
+
+import io.github.unununium.activity.MainActivity;
+
+/** The central budget for the memory used by the frames, which gives it up when the system runs low on memory.
+ * Each level of memory pressure keeps fewer bitmaps in the pool, and from LOW onwards the frames are decoded as
+ * RGB_565 and the rewind buffer is made smaller. From CRITICAL onwards the frames are also decoded at half the
+ * resolution. Shrinking the rewind buffer discards the frames in it.
+ * There is no callback for when the pressure is over, so the budget steps back up one level for each
+ * RESTORE_DELAY_MS without a callback while the app is in the foreground. **/
+public class MemoryBudget {
+    public enum Level {
+        NORMAL(4, false, 1, 1),
+        MODERATE(2, false, 1, 1),
+        LOW(2, true, 1, 2),
+        CRITICAL(1, true, 2, 4),
+        // The app is in the background and likely to be killed, so as much as possible is given up
+        BACKGROUND(0, true, 2, 0);
+
+        final int pooledPerSize;
+        final boolean useRgb565;
+        final int minSampleSize;
+        // The rewind buffer is the size set by the user divided by this, where 0 frees it completely
+        final int rewindDivisor;
+
+        Level(int pooledPerSize, boolean useRgb565, int minSampleSize, int rewindDivisor) {
+            this.pooledPerSize = pooledPerSize;
+            this.useRgb565 = useRgb565;
+            this.minSampleSize = minSampleSize;
+            this.rewindDivisor = rewindDivisor;
+        }
+    }
+
+    private static final long RESTORE_DELAY_MS = 30000;
+
+    private final MainActivity parent;
+    private final Handler restoreHandler = new Handler(Looper.getMainLooper());
+    private final Runnable restorer = new Runnable() {
+        @Override
+        public void run() {
+            if (level == Level.NORMAL) return;
+            setLevel(Level.values()[level.ordinal() - 1]);
+            restoreHandler.postDelayed(this, RESTORE_DELAY_MS);
+        }
+    };
+    private Level level = Level.NORMAL;
+
+    public MemoryBudget(@NotNull MainActivity parent) {
+        this.parent = parent;
+    }
+
+    /** Called from onTrimMemory of the activity. **/
+    public void onTrimMemory(int trimLevel) {
+        if (trimLevel >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            onPressure(Level.BACKGROUND);
+        } else if (trimLevel >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            onPressure(Level.CRITICAL);
+        } else if (trimLevel >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            // Nothing is drawn while the UI is hidden, so the pooled bitmaps would not be reused for a while
+            if (parent.cameraView != null) parent.cameraView.getBitmapPool().clear();
+        } else if (trimLevel >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            onPressure(Level.CRITICAL);
+        } else if (trimLevel >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            onPressure(Level.LOW);
+        } else if (trimLevel >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            onPressure(Level.MODERATE);
+        }
+    }
+
+    /** Called from onLowMemory of the activity, which older versions of Android call instead of onTrimMemory. **/
+    public void onLowMemory() {
+        onPressure(Level.CRITICAL);
+    }
+
+    /** Starts stepping back up from the current level, called from onResume of the activity. **/
+    public void onResume() {
+        if (level == Level.BACKGROUND) setLevel(Level.CRITICAL);
+        restoreHandler.removeCallbacks(restorer);
+        restoreHandler.postDelayed(restorer, RESTORE_DELAY_MS);
+    }
+
+    /** Stops stepping back up, as the memory would be given up again while in the background. **/
+    public void onPause() {
+        restoreHandler.removeCallbacks(restorer);
+    }
+
+    private void onPressure(@NotNull Level pressure) {
+        if (pressure.ordinal() > level.ordinal()) setLevel(pressure);
+        // Another callback means the pressure is not over yet
+        restoreHandler.removeCallbacks(restorer);
+        if (pressure != Level.BACKGROUND) restoreHandler.postDelayed(restorer, RESTORE_DELAY_MS);
+    }
+
+    private void setLevel(@NotNull Level level) {
+        Log.w("MemoryBudget", "Memory level changed from " + this.level + " to " + level);
+        this.level = level;
+        if (parent.cameraView != null) {
+            parent.cameraView.getBitmapPool().setMaxPerKey(level.pooledPerSize);
+            parent.cameraView.setUseRgb565(level.useRgb565);
+            parent.cameraView.getFrameTransform().setMinSampleSize(level.minSampleSize);
+        }
+        applyRewindCapacity();
+    }
+
+    /** Sets the capacity of the rewind buffer from the size set by the user and the current level. **/
+    public void applyRewindCapacity() {
+        int capacity = parent.localParams.rewindBufferMb * 1024 * 1024;
+        parent.rewindBuffer.setCapacity(level.rewindDivisor == 0 ? 0 : capacity / level.rewindDivisor);
+    }
+
+    //****** Start of getter functions ******//
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /** The bytes of the decoded frames that are being drawn or waiting to be, which is an estimate. **/
+    public long getBitmapsInUseBytes() {
+        return parent.cameraView == null ? 0 : parent.cameraView.getBitmapPool().getInUseBytes();
+    }
+
+    public long getBitmapsPooledBytes() {
+        return parent.cameraView == null ? 0 : parent.cameraView.getBitmapPool().getPooledBytes();
+    }
+
+    public long getRewindBytes() {
+        return parent.rewindBuffer.getCapacity();
+    }
+
+    public long getTotalBytes() {
+        return getBitmapsInUseBytes() + getBitmapsPooledBytes() + getRewindBytes();
+    }
+}
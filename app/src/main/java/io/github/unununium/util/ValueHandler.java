@@ -33,6 +33,8 @@ import io.github.unununium.R;
 import io.github.unununium.activity.MainActivity;
 import io.github.unununium.comm.ConnectionParameters;
 import io.github.unununium.fragment.OverlayFragment;
+import io.github.unununium.video.GlassToGlassMeter;
+import io.github.unununium.video.VideoStats;
 
 /** An extension to MainActivity that handles changes in values in connection parameters. **/
 public class ValueHandler {
@@ -55,6 +57,7 @@ public class ValueHandler {
                     refreshNormalTextPage();
                     break;
                 case TYPE_SETTINGS:
+                case TYPE_REWIND:
                 case TYPE_NONE:
                     break;
             }
@@ -81,6 +84,52 @@ public class ValueHandler {
                 .setText(String.format("LPG: %s", parent.localParams.fourDP.format(parent.remoteParams.getLpg())));
     }
 
+    /** Refreshes the video pipeline rows of the diagnostics page. Called periodically by the fragment
+     * rather than on every frame, so that updating the views does not cost frames. **/
+    public void refreshVideoDiagnostics() {
+        if (parent.currentFragment == null || parent.currentFragment.getView() == null
+                || parent.cameraView == null) return;
+        View view = parent.currentFragment.requireView();
+        VideoStats stats = parent.cameraView.getVideoStats();
+        ((TextView) view.findViewById(R.id.overlay_diag_video_fps)).setText(String.format(Locale.ENGLISH,
+                "Video: %.1f fps in, %.1f fps shown", stats.getArrivalFps(), stats.getRenderedFps()));
+        ((TextView) view.findViewById(R.id.overlay_diag_video_decode)).setText(String.format(Locale.ENGLISH,
+                "Decode p50/p95/p99: %.1f/%.1f/%.1f ms", stats.getDecodeTimeUs(50) / 1000.0,
+                stats.getDecodeTimeUs(95) / 1000.0, stats.getDecodeTimeUs(99) / 1000.0));
+        ((TextView) view.findViewById(R.id.overlay_diag_video_present)).setText(String.format(Locale.ENGLISH,
+                "Present p50/p95/p99: %.1f/%.1f/%.1f ms", stats.getPresentDelayUs(50) / 1000.0,
+                stats.getPresentDelayUs(95) / 1000.0, stats.getPresentDelayUs(99) / 1000.0));
+        ((TextView) view.findViewById(R.id.overlay_diag_video_bitrate)).setText(String.format(Locale.ENGLISH,
+                "Bitrate: %.0f kB/s", stats.getBytesPerSecond() / 1000));
+        ((TextView) view.findViewById(R.id.overlay_diag_video_dropped)).setText(String.format(Locale.ENGLISH,
+                "Dropped: %d (stale %d, reordered %d)", stats.getFramesDropped(), stats.getFramesStale(),
+                stats.getFramesReordered()));
+        ((TextView) view.findViewById(R.id.overlay_diag_video_copied)).setText(String.format(Locale.ENGLISH,
+                "Copied: %.1f kB/frame (transport %.1f kB/frame)", stats.getBytesCopiedPerFrame() / 1000,
+                stats.getTransportBytesCopiedPerFrame() / 1000));
+        GlassToGlassMeter meter = parent.cameraView.getLatencyMeter();
+        String latency;
+        if (!meter.isEnabled()) {
+            latency = "Glass-to-glass: off";
+        } else if (meter.getFramesMeasured() == 0) {
+            latency = meter.isClockSynchronized() ? String.format(Locale.ENGLISH,
+                    "Glass-to-glass: no pattern (%d unreadable)", meter.getFramesUnreadable())
+                    : "Glass-to-glass: syncing clock";
+        } else {
+            latency = String.format(Locale.ENGLISH,
+                    "Glass-to-glass p50/p95: %d/%d ms (network %d, decode %d, present %d)",
+                    meter.getTotalHistogram().getPercentile(50), meter.getTotalHistogram().getPercentile(95),
+                    meter.getNetworkHistogram().getPercentile(50), meter.getDecodeHistogram().getPercentile(50),
+                    meter.getPresentHistogram().getPercentile(50));
+        }
+        ((TextView) view.findViewById(R.id.overlay_diag_video_latency)).setText(latency);
+        MemoryBudget budget = parent.memoryBudget;
+        ((TextView) view.findViewById(R.id.overlay_diag_video_memory)).setText(String.format(Locale.ENGLISH,
+                "Memory: %.1f MB (frames %.1f, pool %.1f, rewind %.1f), %s", budget.getTotalBytes() / 1e6,
+                budget.getBitmapsInUseBytes() / 1e6, budget.getBitmapsPooledBytes() / 1e6,
+                budget.getRewindBytes() / 1e6, budget.getLevel().name().toLowerCase(Locale.ENGLISH)));
+    }
+
     public void refreshNormalIconPage() {
         int tempResIcon = parent.localParams.isDay ?
                 (parent.remoteParams.getTemperature() < parent.localParams.lowerTempBound ?
@@ -199,12 +248,36 @@ public class ValueHandler {
                     parent.currentFragment.requireView().findViewById(R.id.overlay_text_moving).setVisibility(parent.remoteParams.isOperator() ? View.VISIBLE : View.INVISIBLE);
                     break;
                 case TYPE_SETTINGS:
+                case TYPE_REWIND:
                 case TYPE_NONE:
                     break;
             }
         });
     }
 
+    /** Shows the frozen feed indicator while the camera feed keeps showing the same image. **/
+    public void onFeedFrozenChanged() {
+        parent.runOnUiThread(() -> {
+            if (parent.currentFragment == null || parent.currentFragment.getView() == null
+                    || parent.cameraView == null) return;
+            boolean frozen = parent.cameraView.isFeedFrozen();
+            ImageView targetView;
+            switch (parent.localParams.getCurrentOverlay()) {
+                case TYPE_NORMAL_ICON:
+                    targetView = parent.currentFragment.requireView().findViewById(R.id.overlay_icon_frozen);
+                    break;
+                case TYPE_NORMAL_TEXT:
+                    targetView = parent.currentFragment.requireView().findViewById(R.id.overlay_text_frozen);
+                    break;
+                default:
+                    return;
+            }
+            targetView.setVisibility(frozen ? View.VISIBLE : View.INVISIBLE);
+            if (frozen) blinkImage(targetView);
+            else targetView.clearAnimation();
+        });
+    }
+
     public void onVelocityChanged() {
         parent.runOnUiThread(() -> {
             if (parent.localParams.getCurrentOverlay() == Constants.OverlayType.TYPE_DIAGNOSTICS && parent.remoteParams.isMoving()) {
@@ -240,6 +313,7 @@ public class ValueHandler {
                             parent.currentFragment.requireView().findViewById(R.id.overlay_text_moving).clearAnimation();
                         break;
                     case TYPE_SETTINGS:
+                    case TYPE_REWIND:
                     case TYPE_NONE:
                         break;
                 }
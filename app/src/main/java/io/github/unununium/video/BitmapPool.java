@@ -0,0 +1,174 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import android.graphics.Bitmap;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A pool of mutable bitmaps keyed by their dimensions and config, used as inBitmap targets when decoding.
+ * Only bitmaps of the current stream resolution are expected to be kept, older sizes can be evicted. **/
+public class BitmapPool {
+    private int maxPerKey;
+    private final Map<Key, ArrayDeque<Bitmap>> pool = new HashMap<>();
+    private final Key lookupKey = new Key(0, 0, null);
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong inUseBytes = new AtomicLong();
+    private long pooledBytes = 0;
+
+    /** @param maxPerKey the number of bitmaps of each size that are kept, any more would be recycled. **/
+    public BitmapPool(int maxPerKey) {
+        this.maxPerKey = maxPerKey;
+    }
+
+    /** Gets a mutable bitmap of the specified size from the pool, creating one if none are available. **/
+    @NotNull
+    public Bitmap acquire(int width, int height, @NotNull Bitmap.Config config) {
+        synchronized (this) {
+            ArrayDeque<Bitmap> available = pool.get(lookupKey.set(width, height, config));
+            Bitmap bitmap = available == null ? null : available.pollFirst();
+            if (bitmap != null) {
+                hitCount.incrementAndGet();
+                pooledBytes -= bitmap.getAllocationByteCount();
+                inUseBytes.addAndGet(bitmap.getAllocationByteCount());
+                return bitmap;
+            }
+        }
+        missCount.incrementAndGet();
+        Bitmap bitmap = Bitmap.createBitmap(width, height, config);
+        inUseBytes.addAndGet(bitmap.getAllocationByteCount());
+        return bitmap;
+    }
+
+    /** Returns a bitmap to the pool. The bitmap should not be used by the caller afterwards. **/
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) return;
+        // Bitmaps that the decoder allocated itself were never acquired, so this is not exact
+        long bytes = bitmap.getAllocationByteCount();
+        long value;
+        do {
+            value = inUseBytes.get();
+        } while (!inUseBytes.compareAndSet(value, Math.max(0, value - bytes)));
+        synchronized (this) {
+            ArrayDeque<Bitmap> available = pool.get(lookupKey.set(bitmap.getWidth(), bitmap.getHeight(),
+                    bitmap.getConfig()));
+            if (available == null) {
+                available = new ArrayDeque<>(maxPerKey);
+                pool.put(new Key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig()), available);
+            }
+            if (available.size() < maxPerKey) {
+                available.addLast(bitmap);
+                pooledBytes += bytes;
+                return;
+            }
+        }
+        bitmap.recycle();
+    }
+
+    /** Recycles all pooled bitmaps that do not match the given size, used when the stream resolution changes. **/
+    public synchronized void evictAllExcept(int width, int height, @NotNull Bitmap.Config config) {
+        lookupKey.set(width, height, config);
+        Iterator<Map.Entry<Key, ArrayDeque<Bitmap>>> iterator = pool.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, ArrayDeque<Bitmap>> entry = iterator.next();
+            if (!entry.getKey().equals(lookupKey)) {
+                for (Bitmap bitmap : entry.getValue()) recycle(bitmap);
+                iterator.remove();
+            }
+        }
+    }
+
+    /** Sets the number of bitmaps of each size that are kept, recycling any that are over it. **/
+    public synchronized void setMaxPerKey(int maxPerKey) {
+        this.maxPerKey = maxPerKey;
+        for (ArrayDeque<Bitmap> available : pool.values()) {
+            while (available.size() > maxPerKey) recycle(available.pollLast());
+        }
+    }
+
+    /** Recycles all pooled bitmaps. **/
+    public synchronized void clear() {
+        for (ArrayDeque<Bitmap> available : pool.values()) {
+            for (Bitmap bitmap : available) recycle(bitmap);
+        }
+        pool.clear();
+    }
+
+    private void recycle(@NotNull Bitmap bitmap) {
+        pooledBytes -= bitmap.getAllocationByteCount();
+        bitmap.recycle();
+    }
+
+    //****** Start of getter functions ******//
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /** The bytes of the bitmaps that were taken from the pool and are not yet released, such as the frames that
+     * are waiting to be drawn and the one on screen. **/
+    public long getInUseBytes() {
+        return inUseBytes.get();
+    }
+
+    /** The bytes of the bitmaps that are kept in the pool for reuse. **/
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    private static final class Key {
+        private int width;
+        private int height;
+        private Bitmap.Config config;
+
+        private Key(int width, int height, Bitmap.Config config) {
+            set(width, height, config);
+        }
+
+        private Key set(int width, int height, Bitmap.Config config) {
+            this.width = width;
+            this.height = height;
+            this.config = config;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return width == other.width && height == other.height && config == other.config;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * width + height) + (config == null ? 0 : config.hashCode());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import org.jetbrains.annotations.NotNull;
+import org.jcodec.common.io.SeekableByteChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/** Collects small writes into a larger buffer before passing them on to the wrapped channel, so that a file is
+ * written in a few large sequential chunks. Anything that moves or reads the channel flushes the buffer first. **/
+class BufferedSeekableChannel implements SeekableByteChannel {
+    private final SeekableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    BufferedSeekableChannel(@NotNull SeekableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    @Override
+    public int write(@NotNull ByteBuffer src) throws IOException {
+        int length = src.remaining();
+        if (length > buffer.remaining()) flush();
+        if (length > buffer.capacity()) {
+            // Copying it into the buffer would not save a write
+            while (src.hasRemaining()) channel.write(src);
+        } else {
+            buffer.put(src);
+        }
+        return length;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        flush();
+        return channel.read(dst);
+    }
+
+    @Override
+    public long position() throws IOException {
+        return channel.position() + buffer.position();
+    }
+
+    @Override
+    public SeekableByteChannel setPosition(long newPosition) throws IOException {
+        flush();
+        channel.setPosition(newPosition);
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        flush();
+        return channel.size();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        flush();
+        channel.truncate(size);
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
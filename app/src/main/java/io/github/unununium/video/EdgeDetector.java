@@ -0,0 +1,269 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.SystemClock;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Highlights the edges in the camera feed to help seeing obstacles, using a Sobel filter on a small grayscale copy
+ * of the frame. It runs on its own thread at a fixed rate, independent of the frame rate, and frames are skipped
+ * while it is busy, so it never holds back the video. The edges are drawn over the feed by the render thread.
+ * Each map keeps the stabilization correction of the frame it was found in, so that with stabilization on it is
+ * drawn where that frame would have been, rather than moved by the correction of the newer frame under it.
+ * Rows are split into bands that are filtered in parallel. **/
+public class EdgeDetector extends Thread {
+    private static final long INTERVAL_MS = 100; // At most 10 edge maps a second
+    private static final int EDGE_WIDTH = 320;
+    private static final int MAX_BANDS = 4;
+    private static final int EDGE_THRESHOLD = 96; // Sum of the absolute gradients, out of 2040
+    private static final int EDGE_COLOUR = 0xC000FF00;
+
+    private static final int PASS_GRAYSCALE = 0;
+    private static final int PASS_SOBEL = 1;
+
+    private final Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect scaledRect = new Rect();
+    private final Matrix overlayMatrix = new Matrix();
+    private final Matrix correctionMatrix = new Matrix();
+    private final Matrix inverseMatrix = new Matrix();
+    private final Band[] bands;
+    private ExecutorService executor = null;
+    // Only written by the decode thread while the detector is idle, and only read by the detector while it is busy
+    private Bitmap input = null;
+    private Canvas inputCanvas = null;
+    private float[] inputCorrection = new float[3]; // x, y and angle
+    // The front map is drawn under the lock, the back map is written outside of it
+    private final Object overlayLock = new Object();
+    private Bitmap frontMap = null;
+    private Bitmap backMap = null;
+    private float[] frontCorrection = new float[3];
+    private float[] backCorrection = new float[3];
+    private int[] pixels = new int[0];
+    private int[] gray = new int[0];
+    private int width = 0;
+    private int height = 0;
+    private long lastOfferTime = 0;
+    private boolean busy = false;
+    private volatile boolean enabled = false;
+    private volatile boolean running = true;
+
+    public EdgeDetector() {
+        super("EdgeDetector");
+        bands = new Band[Math.max(1, Math.min(MAX_BANDS, Runtime.getRuntime().availableProcessors()))];
+        for (int i = 0; i < bands.length; i++) bands[i] = new Band();
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            synchronized (overlayLock) {
+                frontMap = null;
+            }
+        }
+    }
+
+    /** Offers a decoded frame after its stabilization correction was set, which is scaled down and processed if
+     * the detector is due and idle. Called from the decode thread, the frame is not used after this returns. **/
+    public void offer(@NotNull VideoFrame videoFrame) {
+        Bitmap frame = videoFrame.bitmap;
+        if (!enabled) return;
+        long now = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            if (busy || now - lastOfferTime < INTERVAL_MS) return;
+            lastOfferTime = now;
+        }
+        int scaledHeight = Math.max(1, Math.round((float) EDGE_WIDTH * frame.getHeight() / frame.getWidth()));
+        if (input == null || input.getHeight() != scaledHeight) {
+            input = Bitmap.createBitmap(EDGE_WIDTH, scaledHeight, Bitmap.Config.ARGB_8888);
+            inputCanvas = new Canvas(input);
+            scaledRect.set(0, 0, EDGE_WIDTH, scaledHeight);
+        }
+        inputCanvas.drawBitmap(frame, null, scaledRect, scalePaint);
+        inputCorrection[0] = videoFrame.stabilizeX;
+        inputCorrection[1] = videoFrame.stabilizeY;
+        inputCorrection[2] = videoFrame.stabilizeAngle;
+        synchronized (this) {
+            busy = true;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            synchronized (this) {
+                try {
+                    while (running && !busy) wait();
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            if (!running) break;
+            if (process()) {
+                synchronized (overlayLock) {
+                    Bitmap previous = frontMap;
+                    frontMap = enabled ? backMap : null;
+                    backMap = previous;
+                    float[] previousCorrection = frontCorrection;
+                    frontCorrection = backCorrection;
+                    backCorrection = previousCorrection;
+                }
+            }
+            synchronized (this) {
+                busy = false;
+            }
+        }
+        if (executor != null) executor.shutdownNow();
+    }
+
+    /** Fills the back map with the edges of the input, returns false if it was interrupted. **/
+    private boolean process() {
+        width = input.getWidth();
+        height = input.getHeight();
+        if (pixels.length != width * height) {
+            pixels = new int[width * height];
+            gray = new int[width * height];
+        }
+        if (backMap == null || backMap.getWidth() != width || backMap.getHeight() != height) {
+            backMap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        input.getPixels(pixels, 0, width, 0, 0, width, height);
+        if (!runBands(PASS_GRAYSCALE) || !runBands(PASS_SOBEL)) return false;
+        backMap.setPixels(pixels, 0, width, 0, 0, width, height);
+        System.arraycopy(inputCorrection, 0, backCorrection, 0, backCorrection.length);
+        return true;
+    }
+
+    private boolean runBands(int pass) {
+        if (executor == null && bands.length > 1) {
+            executor = Executors.newFixedThreadPool(bands.length - 1, runnable -> new Thread(runnable, "EdgeDetector"));
+        }
+        CountDownLatch latch = new CountDownLatch(bands.length - 1);
+        int rowsPerBand = (height + bands.length - 1) / bands.length;
+        for (int i = 0; i < bands.length; i++) {
+            bands[i].set(pass, Math.min(height, i * rowsPerBand), Math.min(height, (i + 1) * rowsPerBand), latch);
+            if (i > 0) executor.execute(bands[i]);
+        }
+        bands[0].process();
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /** Draws the latest edge map over a frame that was drawn with the given matrix, which includes the stabilization
+     * correction of the frame if it is stabilized. Called from the render thread. The map may be from a slightly
+     * older frame. **/
+    public void drawOverlay(@NotNull Canvas canvas, @NotNull Matrix frameMatrix, @NotNull VideoFrame frame,
+                            boolean stabilized, @NotNull Paint paint) {
+        if (!enabled) return;
+        int frameWidth = frame.bitmap.getWidth();
+        int frameHeight = frame.bitmap.getHeight();
+        synchronized (overlayLock) {
+            if (frontMap == null) return;
+            overlayMatrix.setScale((float) frameWidth / frontMap.getWidth(), (float) frameHeight / frontMap.getHeight());
+            if (stabilized) {
+                // Replaces the correction of the frame in the matrix with the correction of the map
+                FrameStabilizer.getCorrectionMatrix(frame.region, frameWidth, frameHeight, frontCorrection[0],
+                        frontCorrection[1], frontCorrection[2], correctionMatrix);
+                overlayMatrix.postConcat(correctionMatrix);
+                FrameStabilizer.getCorrectionMatrix(frame.region, frameWidth, frameHeight, frame.stabilizeX,
+                        frame.stabilizeY, frame.stabilizeAngle, correctionMatrix);
+                if (correctionMatrix.invert(inverseMatrix)) overlayMatrix.postConcat(inverseMatrix);
+            }
+            overlayMatrix.postConcat(frameMatrix);
+            canvas.drawBitmap(frontMap, overlayMatrix, paint);
+        }
+    }
+
+    public void quit() {
+        running = false;
+        interrupt();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class Band implements Runnable {
+        private int pass;
+        private int startRow;
+        private int endRow;
+        private CountDownLatch latch;
+
+        void set(int pass, int startRow, int endRow, @NotNull CountDownLatch latch) {
+            this.pass = pass;
+            this.startRow = startRow;
+            this.endRow = endRow;
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            try {
+                process();
+            } finally {
+                latch.countDown();
+            }
+        }
+
+        void process() {
+            if (pass == PASS_GRAYSCALE) {
+                for (int i = startRow * width; i < endRow * width; i++) {
+                    int pixel = pixels[i];
+                    gray[i] = (((pixel >> 16) & 0xff) * 77 + ((pixel >> 8) & 0xff) * 150 + (pixel & 0xff) * 29) >> 8;
+                }
+                return;
+            }
+            // The grayscale copy is complete, so the pixels can be overwritten with the edge map
+            for (int y = startRow; y < endRow; y++) {
+                int row = y * width;
+                if (y == 0 || y == height - 1) {
+                    for (int x = 0; x < width; x++) pixels[row + x] = 0;
+                    continue;
+                }
+                pixels[row] = 0;
+                pixels[row + width - 1] = 0;
+                for (int x = 1; x < width - 1; x++) {
+                    int i = row + x;
+                    int topLeft = gray[i - width - 1], top = gray[i - width], topRight = gray[i - width + 1];
+                    int left = gray[i - 1], right = gray[i + 1];
+                    int bottomLeft = gray[i + width - 1], bottom = gray[i + width], bottomRight = gray[i + width + 1];
+                    int gx = topRight + 2 * right + bottomRight - topLeft - 2 * left - bottomLeft;
+                    int gy = bottomLeft + 2 * bottom + bottomRight - topLeft - 2 * top - topRight;
+                    pixels[i] = Math.abs(gx) + Math.abs(gy) > EDGE_THRESHOLD ? EDGE_COLOUR : 0;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import android.graphics.Bitmap;
+
+import org.jetbrains.annotations.NotNull;
+
+/** The thread that takes the frames from the decoder pool in the order they were due, runs the enabled analysis
+ * and filters on them and places them in the slot that the render thread presents from. The decoding itself is
+ * done by the workers of the JpegDecoderPool.
+ * If the render thread has not presented the previous frame by then, that frame is dropped. **/
+public class FrameDecodeThread extends Thread {
+    private final JpegDecoderPool decoderPool;
+    private final FrameSlot<VideoFrame> presentSlot;
+    private final VideoStats stats;
+    private final BitmapPool pool;
+    private final FrozenFeedDetector frozenFeedDetector;
+    private final EdgeDetector edgeDetector;
+    private NightVisionFilter nightVisionFilter = null;
+    private FrameStabilizer stabilizer = null;
+    private volatile boolean running = true;
+    private volatile boolean nightMode = false;
+    private volatile boolean nightEqualization = true;
+    private volatile boolean stabilization = false;
+
+    public FrameDecodeThread(@NotNull JpegDecoderPool decoderPool, @NotNull FrameSlot<VideoFrame> presentSlot,
+                             @NotNull VideoStats stats, @NotNull BitmapPool pool,
+                             @NotNull FrozenFeedDetector frozenFeedDetector, @NotNull EdgeDetector edgeDetector) {
+        super("FrameDecodeThread");
+        this.frozenFeedDetector = frozenFeedDetector;
+        this.edgeDetector = edgeDetector;
+        this.decoderPool = decoderPool;
+        this.presentSlot = presentSlot;
+        this.stats = stats;
+        this.pool = pool;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            VideoFrame frame;
+            try {
+                frame = decoderPool.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (frame == null) break; // Pool stopped
+            // The frame is hashed before it is filtered, so that changing the filter does not look like movement
+            frozenFeedDetector.onFrame(frame);
+            stabilize(frame);
+            applyNightMode(frame.bitmap);
+            edgeDetector.offer(frame);
+            frame.readyTimeNanos = System.nanoTime();
+            VideoFrame replaced = presentSlot.offer(frame);
+            if (replaced != null) {
+                // Either replaced before the next vsync, or offered after the slot was closed
+                stats.onFrameDropped();
+                pool.release(replaced.bitmap);
+            }
+        }
+        if (nightVisionFilter != null) nightVisionFilter.release();
+        nightVisionFilter = null;
+    }
+
+    /** Sets the stabilization correction of the frame, the estimate needs every frame in order so it is done here. **/
+    private void stabilize(@NotNull VideoFrame frame) {
+        if (!stabilization) {
+            stabilizer = null;
+            return;
+        }
+        if (stabilizer == null) stabilizer = new FrameStabilizer();
+        stabilizer.process(frame.bitmap, frame.region, frame);
+    }
+
+    /** The filter and its threads only exist while night mode is enabled. **/
+    private void applyNightMode(@NotNull Bitmap bitmap) {
+        if (!nightMode) {
+            if (nightVisionFilter != null) {
+                nightVisionFilter.release();
+                nightVisionFilter = null;
+            }
+            return;
+        }
+        if (nightVisionFilter == null) nightVisionFilter = new NightVisionFilter();
+        nightVisionFilter.setEqualize(nightEqualization);
+        nightVisionFilter.apply(bitmap);
+    }
+
+    public void setStabilization(boolean stabilization) {
+        this.stabilization = stabilization;
+    }
+
+    /** Sets whether the low light enhancement is applied, with or without histogram equalization. **/
+    public void setNightMode(boolean nightMode, boolean equalization) {
+        this.nightEqualization = equalization;
+        this.nightMode = nightMode;
+    }
+
+    /** Stops the thread and waits for it to finish the frame it is passing on. **/
+    public void quit() {
+        running = false;
+        interrupt();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
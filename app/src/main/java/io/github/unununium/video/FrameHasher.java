@@ -0,0 +1,67 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/** Reduces a frame to an 8x8 average hash, so that re-encoded copies of the same image have the same hash, unlike
+ * their bytes. Hashing a frame only draws it onto a 32x32 bitmap, which is negligible next to decoding it.
+ * Not thread safe, each thread should have its own instance. **/
+class FrameHasher {
+    private static final int SCALED_SIZE = 32;
+    private static final int HASH_SIZE = 8;
+    private static final int BLOCK_SIZE = SCALED_SIZE / HASH_SIZE;
+
+    private final Bitmap scaled = Bitmap.createBitmap(SCALED_SIZE, SCALED_SIZE, Bitmap.Config.ARGB_8888);
+    private final Canvas canvas = new Canvas(scaled);
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect scaledRect = new Rect(0, 0, SCALED_SIZE, SCALED_SIZE);
+    private final int[] pixels = new int[SCALED_SIZE * SCALED_SIZE];
+    private final int[] blocks = new int[HASH_SIZE * HASH_SIZE];
+
+    /** The average hash of the bitmap, each bit is whether a block of it is brighter than the average. **/
+    long hash(@NotNull Bitmap bitmap) {
+        // The filtered draw does the subsampling, so no scaled copy of the frame is allocated
+        canvas.drawBitmap(bitmap, null, scaledRect, paint);
+        scaled.getPixels(pixels, 0, SCALED_SIZE, 0, 0, SCALED_SIZE, SCALED_SIZE);
+        Arrays.fill(blocks, 0);
+        for (int y = 0; y < SCALED_SIZE; y++) {
+            for (int x = 0; x < SCALED_SIZE; x++) {
+                int pixel = pixels[y * SCALED_SIZE + x];
+                int luma = (((pixel >> 16) & 0xff) * 77 + ((pixel >> 8) & 0xff) * 150 + (pixel & 0xff) * 29) >> 8;
+                blocks[(y / BLOCK_SIZE) * HASH_SIZE + x / BLOCK_SIZE] += luma;
+            }
+        }
+        long total = 0;
+        for (int block : blocks) total += block;
+        long average = total / blocks.length;
+        long hash = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i] > average) hash |= 1L << i;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.HandlerThread;
+import android.view.Choreographer;
+import android.view.SurfaceHolder;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/** The thread that draws the newest decoded frame onto the surface, once per display refresh.
+ * Drawing is paced by Choreographer frame callbacks instead of by frame arrival, so a burst of frames does not draw
+ * more than once per vsync. Nothing is drawn when there is no new frame and the view has not changed.
+ * It is the only thread that locks the canvas of the SurfaceHolder it owns. **/
+public class FrameRenderThread extends HandlerThread implements Choreographer.FrameCallback {
+    /** Called on the render thread after each new frame is posted to the surface. **/
+    public interface OnFramePresentedListener {
+        /** The capture time is on the robot's clock, or -1 if the frame has none. **/
+        void onFramePresented(long captureTimeMs);
+    }
+
+    private final SurfaceHolder holder;
+    private final FrameSlot<VideoFrame> presentSlot;
+    private final VideoStats stats;
+    private final BitmapPool pool;
+    private final FrameTransform transform;
+    private final EdgeDetector edgeDetector;
+    private final GlassToGlassMeter latencyMeter;
+    private final Matrix drawMatrix = new Matrix();
+    private final Matrix correctionMatrix = new Matrix();
+    private final Paint paint = new Paint();
+    private final RectF clipRect = new RectF();
+    private final RectF eyeViewport = new RectF();
+    private final LensDistortionMesh distortionMesh = new LensDistortionMesh();
+    private Choreographer choreographer = null;
+    private VideoFrame currentFrame = null;
+    // Whether the current frame has been posted to the surface yet, it is drawn again until it has
+    private boolean currentFramePresented = false;
+    private int drawnTransformVersion = -1;
+    private volatile boolean running = true;
+    private volatile boolean redrawRequested = false;
+    private volatile boolean filterBitmap = true;
+    private volatile boolean lensDistortion = false;
+    private volatile boolean stabilization = false;
+    private volatile OnFramePresentedListener onFramePresentedListener = null;
+
+    public FrameRenderThread(@NotNull SurfaceHolder holder, @NotNull FrameSlot<VideoFrame> presentSlot,
+                             @NotNull VideoStats stats, @NotNull BitmapPool pool,
+                             @NotNull FrameTransform transform, @NotNull EdgeDetector edgeDetector,
+                             @NotNull GlassToGlassMeter latencyMeter) {
+        super("FrameRenderThread");
+        this.edgeDetector = edgeDetector;
+        this.latencyMeter = latencyMeter;
+        this.holder = holder;
+        this.presentSlot = presentSlot;
+        this.stats = stats;
+        this.pool = pool;
+        this.transform = transform;
+    }
+
+    @Override
+    protected void onLooperPrepared() {
+        // The choreographer belongs to the looper of this thread, so callbacks are run here
+        choreographer = Choreographer.getInstance();
+        choreographer.postFrameCallback(this);
+    }
+
+    @Override
+    public void run() {
+        super.run();
+        // The looper has quit, nothing is drawn anymore
+        if (currentFrame != null) pool.release(currentFrame.bitmap);
+        currentFrame = null;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) return;
+        VideoFrame frame = presentSlot.poll();
+        if (frame != null) {
+            if (currentFrame != null) {
+                // Replaced before the surface could take it, like a frame replaced in the slot
+                if (!currentFramePresented) stats.onFrameDropped();
+                // The canvas copied the previous frame when it was drawn, so its bitmap can be decoded into again
+                pool.release(currentFrame.bitmap);
+            }
+            currentFrame = frame;
+            currentFramePresented = false;
+        }
+        // Zooming or switching to stereo mode should not have to wait for the next frame
+        if (currentFrame != null && (!currentFramePresented || redrawRequested
+                || transform.getVersion() != drawnTransformVersion)) {
+            if (drawFrame(currentFrame) && !currentFramePresented) {
+                currentFramePresented = true;
+                onFramePresented(currentFrame);
+            }
+        }
+        choreographer.postFrameCallback(this);
+    }
+
+    /** Records a frame that was posted to the surface for the first time, and notifies the listener. **/
+    private void onFramePresented(@NotNull VideoFrame frame) {
+        stats.onFrameRendered();
+        stats.onFramePresented((System.nanoTime() - frame.readyTimeNanos) / 1000);
+        latencyMeter.onFramePresented(frame);
+        OnFramePresentedListener listener = onFramePresentedListener;
+        if (listener != null) listener.onFramePresented(frame.captureTimeMs);
+    }
+
+    /** Draws the decoded frame onto the surface, letterboxed in the centre of the view or of each eye.
+     * The scaling is done by the canvas while drawing, so no scaled copy of the frame is made.
+     * Returns whether the frame was posted, which it is not while the surface cannot be locked. **/
+    private boolean drawFrame(@NotNull VideoFrame frame) {
+        Bitmap bitmap = frame.bitmap;
+        RectF region = frame.region;
+        if (region == null) {
+            transform.setSourceSize(bitmap.getWidth(), bitmap.getHeight());
+            transform.getMatrix(drawMatrix);
+        } else {
+            transform.getRegionMatrix(region, bitmap.getWidth(), bitmap.getHeight(), drawMatrix);
+        }
+        drawnTransformVersion = transform.getVersion();
+        redrawRequested = false;
+        paint.setFilterBitmap(filterBitmap);
+        // A zoomed frame has to stay inside the letterboxed area, and a region may no longer fill it after panning.
+        // In stereo mode each eye is clipped, so that it does not draw into the other one
+        boolean stereo = transform.isStereo();
+        boolean stabilized = stabilization;
+        boolean clip = stereo || stabilized || transform.isZoomed();
+        boolean clearBars = clip || !transform.coversView();
+        if (clip) transform.getDestinationRect(clipRect);
+        if (stabilized) applyStabilization(frame);
+        int eyeOffset = transform.getEyeOffset();
+        boolean distort = stereo && lensDistortion;
+        if (distort) {
+            transform.getEyeViewport(eyeViewport);
+            distortionMesh.update(drawMatrix, bitmap.getWidth(), bitmap.getHeight(), eyeViewport);
+        }
+        Canvas canvas = holder.lockCanvas();
+        if (canvas == null) {
+            // Tried again at the next vsync
+            redrawRequested = true;
+            return false;
+        }
+        try {
+            if (clearBars) canvas.drawColor(Color.BLACK);
+            // Both eyes draw the same bitmap, so stereo mode does not decode or allocate anything more
+            for (int eye = 0; eye < (stereo ? 2 : 1); eye++) {
+                if (clip) {
+                    canvas.save();
+                    canvas.translate(eye * eyeOffset, 0);
+                    canvas.clipRect(clipRect);
+                }
+                if (distort) {
+                    canvas.drawBitmapMesh(bitmap, LensDistortionMesh.MESH_SIZE, LensDistortionMesh.MESH_SIZE,
+                            distortionMesh.getVertices(), 0, null, 0, paint);
+                } else {
+                    canvas.drawBitmap(bitmap, drawMatrix, paint);
+                    // The edges are not distorted, so they are only drawn without the lens distortion
+                    edgeDetector.drawOverlay(canvas, drawMatrix, frame, stabilized, paint);
+                }
+                if (clip) canvas.restore();
+            }
+        } finally {
+            holder.unlockCanvasAndPost(canvas);
+        }
+        return true;
+    }
+
+    /** Moves the frame by its stabilization correction, and enlarges it so that the moved edges are not shown. **/
+    private void applyStabilization(@NotNull VideoFrame frame) {
+        FrameStabilizer.getCorrectionMatrix(frame.region, frame.bitmap.getWidth(), frame.bitmap.getHeight(),
+                frame.stabilizeX, frame.stabilizeY, frame.stabilizeAngle, correctionMatrix);
+        drawMatrix.preConcat(correctionMatrix);
+        float scale = FrameStabilizer.getMarginScale();
+        drawMatrix.postScale(scale, scale, clipRect.centerX(), clipRect.centerY());
+    }
+
+    /** Sets whether frames are moved by their stabilization correction when they are drawn. **/
+    public void setStabilization(boolean stabilization) {
+        this.stabilization = stabilization;
+        redrawRequested = true;
+    }
+
+    public void setOnFramePresentedListener(OnFramePresentedListener listener) {
+        onFramePresentedListener = listener;
+    }
+
+    /** Sets whether the frame is drawn through the lens distortion mesh in stereo mode. **/
+    public void setLensDistortion(boolean lensDistortion) {
+        this.lensDistortion = lensDistortion;
+        redrawRequested = true;
+    }
+
+    /** Sets whether bilinear filtering is used when scaling, which is smoother but more expensive. **/
+    public void setFilterBitmap(boolean filterBitmap) {
+        this.filterBitmap = filterBitmap;
+        redrawRequested = true;
+    }
+
+    /** Stops the thread and waits for it to finish drawing. **/
+    @Override
+    public boolean quit() {
+        running = false;
+        boolean quit = super.quit();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return quit;
+    }
+}
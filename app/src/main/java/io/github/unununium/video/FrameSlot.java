@@ -0,0 +1,63 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+/** A single-slot handoff between the network thread and the render thread.
+ * Only the latest frame is kept, so a slow consumer sees fewer frames instead of a growing backlog. **/
+public class FrameSlot<T> {
+    private T pending = null;
+    private boolean closed = false;
+
+    /** Places a frame in the slot, returning the stale frame that it replaced (if any). **/
+    public synchronized T offer(T frame) {
+        if (closed) return frame;
+        T replaced = pending;
+        pending = frame;
+        notifyAll();
+        return replaced;
+    }
+
+    /** Waits for a frame to be available and removes it from the slot.
+     * Returns null if the slot has been closed. **/
+    public synchronized T take() throws InterruptedException {
+        while (pending == null && !closed) wait();
+        T frame = pending;
+        pending = null;
+        return frame;
+    }
+
+    /** Removes the current frame from the slot without waiting. **/
+    public synchronized T poll() {
+        T frame = pending;
+        pending = null;
+        return frame;
+    }
+
+    /** Wakes up any waiting consumer and rejects all future frames. **/
+    public synchronized void close() {
+        closed = true;
+        pending = null;
+        notifyAll();
+    }
+
+    /** Allows the slot to accept frames again after it has been closed. **/
+    public synchronized void reopen() {
+        closed = false;
+    }
+}
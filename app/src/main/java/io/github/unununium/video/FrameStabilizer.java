@@ -0,0 +1,251 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/** Estimates the shake of the camera and the correction that cancels it out.
+ * The global translation and rotation between frames are estimated by block matching on a small luma copy of each
+ * frame. The camera path is smoothed, and the difference between the smoothed and the actual path is the correction,
+ * which is applied to the frame when it is drawn. Every buffer is allocated once, and the matching stops when the
+ * time budget for the frame runs out. Not thread safe, it should only be used from the decode thread. **/
+public class FrameStabilizer {
+    private static final int LUMA_WIDTH = 160;
+    private static final int BLOCK_SIZE = 16;
+    private static final int SEARCH_RADIUS = 8; // In luma pixels, which is 5% of the frame width
+    private static final int BLOCK_COLUMNS = 5;
+    private static final int BLOCK_ROWS = 3;
+    private static final int MIN_BLOCKS = 3;
+    private static final int MIN_BLOCK_CONTRAST = 8 * BLOCK_SIZE * BLOCK_SIZE; // Flat blocks match anywhere
+    private static final float OUTLIER_DISTANCE = 2f; // Blocks on moving objects are ignored
+    private static final long BUDGET_NS = 4_000_000;
+    private static final float SMOOTHING = 0.9f; // Closer to 1 follows slow camera movement more slowly
+    private static final float MAX_CORRECTION = 0.08f; // Also how much the frame is enlarged to hide the edges
+    private static final float MAX_CORRECTION_ANGLE = 0.1f; // In radians
+
+    private final Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect scaledRect = new Rect();
+    private Bitmap scaled = null;
+    private Canvas scaledCanvas = null;
+    private int[] pixels = new int[0];
+    private int[] luma = new int[0];
+    private int[] previousLuma = new int[0];
+    private final float[] blockX = new float[BLOCK_COLUMNS * BLOCK_ROWS];
+    private final float[] blockY = new float[BLOCK_COLUMNS * BLOCK_ROWS];
+    private final float[] motionX = new float[BLOCK_COLUMNS * BLOCK_ROWS];
+    private final float[] motionY = new float[BLOCK_COLUMNS * BLOCK_ROWS];
+    private final float[] sorted = new float[BLOCK_COLUMNS * BLOCK_ROWS];
+    private final RectF lastRegion = new RectF();
+    private int lumaHeight = 0;
+    private int lastBitmapWidth = 0;
+    private int lastBitmapHeight = 0;
+    private boolean hasPrevious = false;
+    // The camera path and its smoothed version, in fractions of the frame size and radians
+    private float pathX = 0, pathY = 0, pathAngle = 0;
+    private float smoothX = 0, smoothY = 0, smoothAngle = 0;
+
+    /** Estimates the movement since the previous frame and stores the correction for this frame in it.
+     * The region is the part of the frame the bitmap holds, or null for the whole frame. **/
+    public void process(@NotNull Bitmap bitmap, @Nullable RectF region, @NotNull VideoFrame frame) {
+        long start = System.nanoTime();
+        if (bitmap.getWidth() != lastBitmapWidth || bitmap.getHeight() != lastBitmapHeight
+                || (region == null ? !lastRegion.isEmpty() : !region.equals(lastRegion))) {
+            // A different resolution or a pan cannot be compared with the previous frame
+            reset();
+            lastBitmapWidth = bitmap.getWidth();
+            lastBitmapHeight = bitmap.getHeight();
+            if (region == null) lastRegion.setEmpty();
+            else lastRegion.set(region);
+        }
+        prepareLuma(bitmap);
+        if (hasPrevious) estimate(start);
+        hasPrevious = true;
+        int[] swap = previousLuma;
+        previousLuma = luma;
+        luma = swap;
+
+        // The correction moves the frame from where the camera is to where the smoothed path is
+        float regionWidth = region == null ? 1 : region.width();
+        float regionHeight = region == null ? 1 : region.height();
+        frame.stabilizeX = clamp((smoothX - pathX) * regionWidth, MAX_CORRECTION);
+        frame.stabilizeY = clamp((smoothY - pathY) * regionHeight, MAX_CORRECTION);
+        frame.stabilizeAngle = clamp(smoothAngle - pathAngle, MAX_CORRECTION_ANGLE);
+    }
+
+    private void prepareLuma(@NotNull Bitmap bitmap) {
+        int height = Math.max(BLOCK_SIZE + 2 * SEARCH_RADIUS,
+                Math.round((float) LUMA_WIDTH * bitmap.getHeight() / bitmap.getWidth()));
+        if (scaled == null || lumaHeight != height) {
+            lumaHeight = height;
+            scaled = Bitmap.createBitmap(LUMA_WIDTH, height, Bitmap.Config.ARGB_8888);
+            scaledCanvas = new Canvas(scaled);
+            scaledRect.set(0, 0, LUMA_WIDTH, height);
+            pixels = new int[LUMA_WIDTH * height];
+            luma = new int[LUMA_WIDTH * height];
+            previousLuma = new int[LUMA_WIDTH * height];
+            hasPrevious = false;
+        }
+        scaledCanvas.drawBitmap(bitmap, null, scaledRect, scalePaint);
+        scaled.getPixels(pixels, 0, LUMA_WIDTH, 0, 0, LUMA_WIDTH, height);
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            luma[i] = (((pixel >> 16) & 0xff) * 77 + ((pixel >> 8) & 0xff) * 150 + (pixel & 0xff) * 29) >> 8;
+        }
+    }
+
+    /** Matches blocks of this frame in the previous one, and fits a translation and rotation to their motion. **/
+    private void estimate(long start) {
+        int blocks = 0;
+        int spacingX = (LUMA_WIDTH - 2 * SEARCH_RADIUS - BLOCK_SIZE) / (BLOCK_COLUMNS - 1);
+        int spacingY = (lumaHeight - 2 * SEARCH_RADIUS - BLOCK_SIZE) / (BLOCK_ROWS - 1);
+        for (int row = 0; row < BLOCK_ROWS; row++) {
+            for (int column = 0; column < BLOCK_COLUMNS; column++) {
+                if (System.nanoTime() - start > BUDGET_NS) break;
+                int x = SEARCH_RADIUS + column * spacingX;
+                int y = SEARCH_RADIUS + row * spacingY;
+                if (matchBlock(x, y, blocks)) blocks++;
+            }
+        }
+        if (blocks < MIN_BLOCKS) return;
+
+        // Blocks that do not move with the majority are on moving objects
+        float medianX = median(motionX, blocks);
+        float medianY = median(motionY, blocks);
+        int inliers = 0;
+        for (int i = 0; i < blocks; i++) {
+            if (Math.abs(motionX[i] - medianX) > OUTLIER_DISTANCE
+                    || Math.abs(motionY[i] - medianY) > OUTLIER_DISTANCE) continue;
+            blockX[inliers] = blockX[i];
+            blockY[inliers] = blockY[i];
+            motionX[inliers] = motionX[i];
+            motionY[inliers] = motionY[i];
+            inliers++;
+        }
+        if (inliers < MIN_BLOCKS) return;
+
+        // Least squares fit of motion = translation + angle x (position - centre) for small angles
+        float centreX = LUMA_WIDTH / 2f, centreY = lumaHeight / 2f;
+        float translationX = 0, translationY = 0;
+        for (int i = 0; i < inliers; i++) {
+            translationX += motionX[i];
+            translationY += motionY[i];
+        }
+        translationX /= inliers;
+        translationY /= inliers;
+        float numerator = 0, denominator = 0;
+        for (int i = 0; i < inliers; i++) {
+            float relativeX = blockX[i] - centreX, relativeY = blockY[i] - centreY;
+            numerator += relativeX * (motionY[i] - translationY) - relativeY * (motionX[i] - translationX);
+            denominator += relativeX * relativeX + relativeY * relativeY;
+        }
+        float angle = denominator > 0 ? numerator / denominator : 0;
+
+        pathX += translationX / LUMA_WIDTH;
+        pathY += translationY / lumaHeight;
+        pathAngle += angle;
+        smoothX = smoothX * SMOOTHING + pathX * (1 - SMOOTHING);
+        smoothY = smoothY * SMOOTHING + pathY * (1 - SMOOTHING);
+        smoothAngle = smoothAngle * SMOOTHING + pathAngle * (1 - SMOOTHING);
+    }
+
+    /** Finds where the block at (x, y) was in the previous frame by the smallest sum of absolute differences.
+     * Stores the motion of the content into the given index, returns false if the block has too little detail. **/
+    private boolean matchBlock(int x, int y, int index) {
+        int min = Integer.MAX_VALUE, max = 0;
+        for (int row = 0; row < BLOCK_SIZE; row++) {
+            int offset = (y + row) * LUMA_WIDTH + x;
+            for (int column = 0; column < BLOCK_SIZE; column++) {
+                int value = luma[offset + column];
+                if (value < min) min = value;
+                if (value > max) max = value;
+            }
+        }
+        if ((max - min) * BLOCK_SIZE * BLOCK_SIZE < MIN_BLOCK_CONTRAST) return false;
+
+        int bestSad = Integer.MAX_VALUE, bestDx = 0, bestDy = 0;
+        for (int dy = -SEARCH_RADIUS; dy <= SEARCH_RADIUS; dy++) {
+            for (int dx = -SEARCH_RADIUS; dx <= SEARCH_RADIUS; dx++) {
+                int sad = 0;
+                for (int row = 0; row < BLOCK_SIZE && sad < bestSad; row++) {
+                    int current = (y + row) * LUMA_WIDTH + x;
+                    int previous = (y + row + dy) * LUMA_WIDTH + x + dx;
+                    for (int column = 0; column < BLOCK_SIZE; column++) {
+                        sad += Math.abs(luma[current + column] - previousLuma[previous + column]);
+                    }
+                }
+                if (sad < bestSad) {
+                    bestSad = sad;
+                    bestDx = dx;
+                    bestDy = dy;
+                }
+            }
+        }
+        // The content was at (x + dx, y + dy) in the previous frame, so it moved by the opposite
+        blockX[index] = x + BLOCK_SIZE / 2f;
+        blockY[index] = y + BLOCK_SIZE / 2f;
+        motionX[index] = -bestDx;
+        motionY[index] = -bestDy;
+        return true;
+    }
+
+    private float median(@NotNull float[] values, int count) {
+        System.arraycopy(values, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        return sorted[count / 2];
+    }
+
+    private static float clamp(float value, float limit) {
+        return Math.max(-limit, Math.min(limit, value));
+    }
+
+    /** Sets the matrix to move a bitmap by the stabilization correction of a frame. The correction is relative to
+     * the whole frame, of which the bitmap may only hold a region. **/
+    public static void getCorrectionMatrix(@Nullable RectF region, int bitmapWidth, int bitmapHeight,
+                                           float stabilizeX, float stabilizeY, float stabilizeAngle,
+                                           @NotNull Matrix target) {
+        float frameWidth = bitmapWidth / (region == null ? 1 : region.width());
+        float frameHeight = bitmapHeight / (region == null ? 1 : region.height());
+        float centreX = (0.5f - (region == null ? 0 : region.left)) * frameWidth;
+        float centreY = (0.5f - (region == null ? 0 : region.top)) * frameHeight;
+        target.setTranslate(stabilizeX * frameWidth, stabilizeY * frameHeight);
+        target.preRotate((float) Math.toDegrees(stabilizeAngle), centreX, centreY);
+    }
+
+    /** The frame is enlarged by this much, so that the corrected frame does not show its edges. **/
+    public static float getMarginScale() {
+        return 1 + 2 * MAX_CORRECTION;
+    }
+
+    /** Forgets the camera path, for example after the resolution changed. **/
+    public void reset() {
+        hasPrevious = false;
+        pathX = pathY = pathAngle = 0;
+        smoothX = smoothY = smoothAngle = 0;
+    }
+}
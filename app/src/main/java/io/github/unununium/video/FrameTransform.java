@@ -0,0 +1,206 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import android.graphics.Matrix;
+import android.graphics.RectF;
+
+import org.jetbrains.annotations.NotNull;
+
+/** The transform from the source frame to the surface, which letterboxes the frame in the centre.
+ * The frame can be zoomed into and panned, the visible part of the frame then fills the letterboxed area.
+ * In stereo mode the view is split into two eyes, the transform is then for the left eye only.
+ * It is only recalculated when the size of the view, the frame or the zoom changes, not on every frame. **/
+public class FrameTransform {
+    public static final float MAX_ZOOM = 4f;
+
+    private final Matrix matrix = new Matrix();
+    private final RectF srcRect = new RectF();
+    private final RectF dstRect = new RectF();
+    private final RectF regionRect = new RectF();
+    private final RectF regionDstRect = new RectF();
+    private int viewWidth = 0;
+    private int viewHeight = 0;
+    private int sourceWidth = 0;
+    private int sourceHeight = 0;
+    // The zoom is kept relative to the frame, so it is not affected by the resolution changing
+    private float zoom = 1f;
+    private float centerX = 0.5f;
+    private float centerY = 0.5f;
+    private boolean stereo = false;
+    private int minSampleSize = 1;
+    // Changes whenever the transform is recalculated, so that the render thread knows to redraw
+    private int version = 0;
+
+    /** Called from onSizeChanged of the view. **/
+    public synchronized void setViewSize(int width, int height) {
+        if (width == viewWidth && height == viewHeight) return;
+        viewWidth = width;
+        viewHeight = height;
+        recalculate();
+    }
+
+    /** Called with the size of each frame, only recalculates on a change. **/
+    public synchronized void setSourceSize(int width, int height) {
+        if (width == sourceWidth && height == sourceHeight) return;
+        sourceWidth = width;
+        sourceHeight = height;
+        recalculate();
+    }
+
+    /** Sets whether the view is split into a left and a right eye, which both show the whole frame. **/
+    public synchronized void setStereo(boolean stereo) {
+        if (stereo == this.stereo) return;
+        this.stereo = stereo;
+        recalculate();
+    }
+
+    private int getEyeWidth() {
+        return stereo ? viewWidth / 2 : viewWidth;
+    }
+
+    private void recalculate() {
+        version++;
+        // The letterboxed area does not depend on the zoom
+        srcRect.set(0, 0, sourceWidth, sourceHeight);
+        dstRect.set(0, 0, getEyeWidth(), viewHeight);
+        matrix.setRectToRect(srcRect, dstRect, Matrix.ScaleToFit.CENTER);
+        matrix.mapRect(dstRect, srcRect);
+        if (zoom > 1f) {
+            getVisibleRegion(srcRect);
+            srcRect.left *= sourceWidth;
+            srcRect.right *= sourceWidth;
+            srcRect.top *= sourceHeight;
+            srcRect.bottom *= sourceHeight;
+            matrix.setRectToRect(srcRect, dstRect, Matrix.ScaleToFit.FILL);
+        }
+    }
+
+    /** Zooms by the factor, keeping the point of the frame under the focus (in view coordinates) in place. **/
+    public synchronized void zoomBy(float factor, float focusX, float focusY) {
+        if (dstRect.width() <= 0 || dstRect.height() <= 0) return;
+        // Pinching on the right eye zooms into the same point as on the left eye
+        if (stereo && getEyeWidth() > 0) focusX %= getEyeWidth();
+        float newZoom = Math.max(1f, Math.min(MAX_ZOOM, zoom * factor));
+        float offsetX = (focusX - dstRect.left) / dstRect.width() - 0.5f;
+        float offsetY = (focusY - dstRect.top) / dstRect.height() - 0.5f;
+        centerX += offsetX / zoom - offsetX / newZoom;
+        centerY += offsetY / zoom - offsetY / newZoom;
+        zoom = newZoom;
+        clampCenter();
+        recalculate();
+    }
+
+    /** Moves the visible part of the frame by a distance in view coordinates, in the direction of a scroll. **/
+    public synchronized void panBy(float distanceX, float distanceY) {
+        if (zoom <= 1f || dstRect.width() <= 0 || dstRect.height() <= 0) return;
+        centerX += distanceX / (dstRect.width() * zoom);
+        centerY += distanceY / (dstRect.height() * zoom);
+        clampCenter();
+        recalculate();
+    }
+
+    public synchronized void resetZoom() {
+        zoom = 1f;
+        centerX = 0.5f;
+        centerY = 0.5f;
+        recalculate();
+    }
+
+    private void clampCenter() {
+        float halfSize = 0.5f / zoom;
+        centerX = Math.max(halfSize, Math.min(1 - halfSize, centerX));
+        centerY = Math.max(halfSize, Math.min(1 - halfSize, centerY));
+    }
+
+    public synchronized boolean isZoomed() {
+        return zoom > 1f;
+    }
+
+    /** Gets the visible part of the frame, as fractions of its width and height. **/
+    public synchronized void getVisibleRegion(@NotNull RectF target) {
+        float halfSize = 0.5f / zoom;
+        target.set(centerX - halfSize, centerY - halfSize, centerX + halfSize, centerY + halfSize);
+    }
+
+    /** Gets the largest power of two sample size that a frame of the given size can be decoded at,
+     * while still having at least as many pixels as the area it is drawn into. **/
+    public synchronized int getSampleSize(int width, int height) {
+        if (getEyeWidth() <= 0 || viewHeight <= 0 || width <= 0 || height <= 0) return minSampleSize;
+        // The frame is letterboxed, so the scale is limited by the tighter of the two dimensions
+        float scale = Math.min((float) getEyeWidth() / width, (float) viewHeight / height);
+        int sampleSize = minSampleSize;
+        while (sampleSize * 2 * scale <= 1) sampleSize *= 2;
+        return sampleSize;
+    }
+
+    /** Sets the smallest sample size frames are decoded at, as a power of two. Above 1 the frames are decoded
+     * at less detail than they are drawn at, which is used to save memory. **/
+    public synchronized void setMinSampleSize(int minSampleSize) {
+        this.minSampleSize = minSampleSize;
+    }
+
+    /** Copies the current matrix into the target, so that it could be used outside of the lock. **/
+    public synchronized void getMatrix(@NotNull Matrix target) {
+        target.set(matrix);
+    }
+
+    /** Gets the matrix for a bitmap that only holds a region of the frame, given as fractions of its width and
+     * height. The region is placed where it is in the current zoom, even if it changed since it was decoded. **/
+    public synchronized void getRegionMatrix(@NotNull RectF region, int bitmapWidth, int bitmapHeight,
+                                             @NotNull Matrix target) {
+        getVisibleRegion(regionRect);
+        float scaleX = dstRect.width() / regionRect.width();
+        float scaleY = dstRect.height() / regionRect.height();
+        float left = dstRect.left + (region.left - regionRect.left) * scaleX;
+        float top = dstRect.top + (region.top - regionRect.top) * scaleY;
+        regionRect.set(0, 0, bitmapWidth, bitmapHeight);
+        regionDstRect.set(left, top, left + region.width() * scaleX, top + region.height() * scaleY);
+        target.setRectToRect(regionRect, regionDstRect, Matrix.ScaleToFit.FILL);
+    }
+
+    /** Gets the letterboxed area of the view that the frame is drawn into. **/
+    public synchronized void getDestinationRect(@NotNull RectF target) {
+        target.set(dstRect);
+    }
+
+    /** Gets the area of the view for the left eye, which is the whole view if it is not in stereo mode. **/
+    public synchronized void getEyeViewport(@NotNull RectF target) {
+        target.set(0, 0, getEyeWidth(), viewHeight);
+    }
+
+    /** The horizontal distance from the left eye to the right eye, or 0 if it is not in stereo mode. **/
+    public synchronized int getEyeOffset() {
+        return stereo ? viewWidth - getEyeWidth() : 0;
+    }
+
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    public synchronized boolean isStereo() {
+        return stereo;
+    }
+
+    /** Whether the frame covers the whole view, if not the letterbox bars have to be cleared. **/
+    public synchronized boolean coversView() {
+        return !stereo && dstRect.left <= 0 && dstRect.top <= 0 && dstRect.right >= viewWidth
+                && dstRect.bottom >= viewHeight;
+    }
+}
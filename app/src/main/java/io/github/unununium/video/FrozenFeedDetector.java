@@ -0,0 +1,99 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import org.jetbrains.annotations.NotNull;
+
+/** Detects a camera that has hung while the server keeps sending its last image.
+ * The feed is flagged as frozen once enough frames in a row have the same average hash (see FrameHasher) and the
+ * same capture time, so that a scene that simply does not move is not flagged while the camera still captures it.
+ * The hash is taken of the whole frame before it is zoomed or panned, so changing the view does not look like
+ * movement. If the server does not send capture times, only the hashes are compared. **/
+public class FrozenFeedDetector {
+    public interface OnFrozenChangedListener {
+        /** Called from the decode thread. **/
+        void onFrozenChanged(boolean frozen);
+    }
+
+    public static final int DEFAULT_FROZEN_FRAME_COUNT = 60; // About 2 seconds of the feed
+
+    private final OnFrozenChangedListener listener;
+    private FrameHasher hasher = null;
+    private int frozenFrameCount = DEFAULT_FROZEN_FRAME_COUNT;
+    private long lastHash = 0;
+    private long lastCaptureTime = -1;
+    private int identicalCount = 0;
+    private volatile boolean frozen = false;
+
+    public FrozenFeedDetector(@NotNull OnFrozenChangedListener listener) {
+        this.listener = listener;
+    }
+
+    /** Updates whether the feed is frozen with the decoded frame. Called from the decode thread, in order.
+     * Frames that only hold the zoomed region were already hashed whole while decoding. **/
+    public void onFrame(@NotNull VideoFrame frame) {
+        long hash;
+        if (frame.hasContentHash) {
+            hash = frame.contentHash;
+        } else if (frame.region == null) {
+            if (hasher == null) hasher = new FrameHasher();
+            hash = hasher.hash(frame.bitmap);
+        } else {
+            return;
+        }
+        onFrame(hash, frame.captureTimeMs);
+    }
+
+    /** Updates whether the feed is frozen from the hash and capture time of a frame, which is -1 if unknown. **/
+    void onFrame(long hash, long captureTimeMs) {
+        boolean changed;
+        synchronized (this) {
+            boolean identical = hash == lastHash && (captureTimeMs < 0 || captureTimeMs == lastCaptureTime);
+            identicalCount = identical ? identicalCount + 1 : 0;
+            lastHash = hash;
+            lastCaptureTime = captureTimeMs;
+            boolean nowFrozen = identicalCount >= frozenFrameCount;
+            changed = nowFrozen != frozen;
+            frozen = nowFrozen;
+        }
+        if (changed) listener.onFrozenChanged(frozen);
+    }
+
+    /** Sets how many identical frames in a row mark the feed as frozen. **/
+    public synchronized void setFrozenFrameCount(int frozenFrameCount) {
+        this.frozenFrameCount = Math.max(1, frozenFrameCount);
+    }
+
+    /** Forgets the previous frames, for example when reconnecting. **/
+    public void reset() {
+        boolean changed;
+        synchronized (this) {
+            identicalCount = 0;
+            lastHash = 0;
+            lastCaptureTime = -1;
+            changed = frozen;
+            frozen = false;
+        }
+        if (changed) listener.onFrozenChanged(false);
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+}
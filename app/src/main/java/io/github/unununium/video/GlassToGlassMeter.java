@@ -0,0 +1,189 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.SystemClock;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/** Measures the glass-to-glass latency of the feed, from a timestamp pattern that the robot or a stand-in for it
+ * draws into the frames, to the frame being presented on the screen.
+ *
+ * The pattern is a strip of 40 square cells across the full width of the top of the frame. The first two cells
+ * are white and black, followed by the lowest 32 bits of the time in ms on the server's clock with the most
+ * significant bit first, then the sum of the 8 nibbles of the time modulo 16 in 4 cells, and then a black and a
+ * white cell. A white cell is a 1 bit. The time is compared against the server's clock through the offset found
+ * by the clock sync of the connection, so the clock of the robot has to be synchronized with the server.
+ *
+ * The latency is split into the network stage up to the frame arriving, which includes capturing and encoding
+ * it on the robot, the decode stage up to the frame being ready, which includes waiting in the jitter buffer,
+ * and the present stage up to the frame being posted to the surface. The time the display takes to show the
+ * posted frame is not included. Only the render thread measures frames. **/
+public class GlassToGlassMeter {
+    private static final int PATTERN_CELLS = 40;
+    private static final int TIME_BITS = 32;
+    private static final int CHECKSUM_BITS = 4;
+    // The black and white cells have to differ by this much in luma for the pattern to be read
+    private static final int MIN_CONTRAST = 64;
+    // A latency below this is taken to be a misread pattern or a clock that is out of sync
+    private static final long MIN_LATENCY_MS = -100;
+    private static final long MAX_LATENCY_MS = 10000;
+
+    private final LatencyHistogram networkHistogram = new LatencyHistogram();
+    private final LatencyHistogram decodeHistogram = new LatencyHistogram();
+    private final LatencyHistogram presentHistogram = new LatencyHistogram();
+    private final LatencyHistogram totalHistogram = new LatencyHistogram();
+    private final int[] cellLuma = new int[PATTERN_CELLS];
+    private volatile boolean enabled = false;
+    private volatile boolean clockSynchronized = false;
+    private volatile long clockOffsetMs = 0;
+    private volatile long framesUnreadable = 0;
+
+    /** Sets whether presented frames are measured. The histograms are cleared when measuring starts. **/
+    public void setEnabled(boolean enabled) {
+        if (enabled && !this.enabled) clear();
+        this.enabled = enabled;
+    }
+
+    /** Sets the server's time minus SystemClock.elapsedRealtime in ms, see ClockSync. **/
+    public void setClockOffset(long clockOffsetMs) {
+        this.clockOffsetMs = clockOffsetMs;
+        clockSynchronized = true;
+    }
+
+    public void clear() {
+        networkHistogram.clear();
+        decodeHistogram.clear();
+        presentHistogram.clear();
+        totalHistogram.clear();
+        framesUnreadable = 0;
+    }
+
+    /** Called by the render thread after the frame was posted to the surface. Frames that only hold a region of
+     * the frame, such as when zoomed in, do not hold the pattern and are skipped. **/
+    void onFramePresented(@NotNull VideoFrame frame) {
+        if (!enabled || !clockSynchronized || frame.bitmap == null || frame.region != null) return;
+        long nowNanos = System.nanoTime();
+        long nowMs = SystemClock.elapsedRealtime();
+        long patternTime = readPattern(frame.bitmap);
+        if (patternTime < 0) {
+            framesUnreadable++;
+            return;
+        }
+        // Only the lowest 32 bits of the time are sent, so the differences are taken modulo 2^32
+        long offset = clockOffsetMs;
+        long totalMs = (int) (nowMs + offset - patternTime);
+        if (totalMs < MIN_LATENCY_MS || totalMs > MAX_LATENCY_MS) {
+            framesUnreadable++;
+            return;
+        }
+        long readyMs = nowMs - (nowNanos - frame.readyTimeNanos) / 1000000;
+        networkHistogram.add((int) (frame.arrivalTimeMs + offset - patternTime));
+        decodeHistogram.add(readyMs - frame.arrivalTimeMs);
+        presentHistogram.add(nowMs - readyMs);
+        totalHistogram.add(totalMs);
+    }
+
+    /** Reads the time from the pattern at the top of the bitmap, or returns -1 if there is no valid pattern. **/
+    private long readPattern(@NotNull Bitmap bitmap) {
+        float cellSize = (float) bitmap.getWidth() / PATTERN_CELLS;
+        if (cellSize < 3 || bitmap.getHeight() < cellSize) return -1;
+        int y = (int) (cellSize / 2);
+        for (int i = 0; i < PATTERN_CELLS; i++) {
+            cellLuma[i] = sampleLuma(bitmap, (int) ((i + 0.5f) * cellSize), y);
+        }
+        if (cellLuma[0] - cellLuma[1] < MIN_CONTRAST) return -1;
+        int threshold = (cellLuma[0] + cellLuma[1]) / 2;
+        if (cellLuma[PATTERN_CELLS - 2] >= threshold || cellLuma[PATTERN_CELLS - 1] < threshold) return -1;
+        long time = 0;
+        for (int i = 0; i < TIME_BITS; i++) {
+            time = (time << 1) | (cellLuma[2 + i] >= threshold ? 1 : 0);
+        }
+        int checksum = 0;
+        for (int i = 0; i < CHECKSUM_BITS; i++) {
+            checksum = (checksum << 1) | (cellLuma[2 + TIME_BITS + i] >= threshold ? 1 : 0);
+        }
+        int nibbleSum = 0;
+        for (int shift = 0; shift < TIME_BITS; shift += 4) nibbleSum += (time >> shift) & 0xF;
+        return (nibbleSum & 0xF) == checksum ? time : -1;
+    }
+
+    /** The average luma of the 3 by 3 pixels around the point, to be robust against JPEG noise. **/
+    private static int sampleLuma(@NotNull Bitmap bitmap, int x, int y) {
+        int sum = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                int pixel = bitmap.getPixel(Math.max(0, Math.min(bitmap.getWidth() - 1, x + dx)),
+                        Math.max(0, Math.min(bitmap.getHeight() - 1, y + dy)));
+                sum += (Color.red(pixel) * 77 + Color.green(pixel) * 150 + Color.blue(pixel) * 29) >> 8;
+            }
+        }
+        return sum / 9;
+    }
+
+    /** Writes the histograms as CSV, with a row for each bucket and a column for each stage. **/
+    public void writeCsv(@NotNull Writer writer) throws IOException {
+        writer.write("bucket_ms,network,decode,present,total\n");
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            writer.write(String.format(Locale.ENGLISH, "%d,%d,%d,%d,%d\n", i * LatencyHistogram.BUCKET_MS,
+                    networkHistogram.getCount(i), decodeHistogram.getCount(i), presentHistogram.getCount(i),
+                    totalHistogram.getCount(i)));
+        }
+    }
+
+    //****** Start of getter functions ******//
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isClockSynchronized() {
+        return clockSynchronized;
+    }
+
+    public long getFramesMeasured() {
+        return totalHistogram.getTotal();
+    }
+
+    public long getFramesUnreadable() {
+        return framesUnreadable;
+    }
+
+    public LatencyHistogram getNetworkHistogram() {
+        return networkHistogram;
+    }
+
+    public LatencyHistogram getDecodeHistogram() {
+        return decodeHistogram;
+    }
+
+    public LatencyHistogram getPresentHistogram() {
+        return presentHistogram;
+    }
+
+    public LatencyHistogram getTotalHistogram() {
+        return totalHistogram;
+    }
+}
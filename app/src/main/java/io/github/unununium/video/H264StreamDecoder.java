@@ -0,0 +1,173 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import org.jcodec.codecs.h264.H264Decoder;
+import org.jcodec.codecs.h264.H264Utils;
+import org.jcodec.codecs.h264.io.model.NALUnit;
+import org.jcodec.codecs.h264.io.model.NALUnitType;
+import org.jcodec.common.AndroidUtil;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import io.github.unununium.util.CameraSurfaceView;
+
+/** Decodes an H.264 elementary stream (Annex B, one access unit per message) on a background thread
+ * and passes the decoded frames to the CameraSurfaceView.
+ * Unlike JPEG frames, access units depend on each other, so they are queued instead of replaced. If the
+ * queue overflows or an access unit cannot be decoded, everything up to the next IDR frame is dropped as it
+ * could not be decoded correctly. An IDR frame that overflows the queue is kept, as it does not depend on the
+ * access units before it. **/
+public class H264StreamDecoder extends Thread {
+    private static final int QUEUE_CAPACITY = 8;
+
+    private final CameraSurfaceView output;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final H264Decoder decoder = new H264Decoder();
+    private final byte[][] yuvBuffer;
+    // Guards the key frame gate together with the queue, as both the Socket.IO and the decoder thread change them
+    private final Object keyFrameLock = new Object();
+    private volatile boolean running = true;
+    private boolean waitingForKeyFrame = true;
+
+    /** The maximum width and height are used to allocate the decoding buffer once. **/
+    public H264StreamDecoder(@NotNull CameraSurfaceView output, int maxWidth, int maxHeight) {
+        super("H264StreamDecoder");
+        this.output = output;
+        // H.264 frames are coded in 16x16 macroblocks, so the buffer has to be aligned to them
+        yuvBuffer = Picture.create((maxWidth + 15) & ~15, (maxHeight + 15) & ~15,
+                ColorSpace.YUV420J).getData();
+    }
+
+    /** Queues an access unit for decoding. Called from the Socket.IO thread. **/
+    public void onAccessUnitReceived(@NotNull byte[] accessUnit) {
+        VideoStats stats = output.getVideoStats();
+        stats.onFrameReceived(accessUnit.length);
+        synchronized (keyFrameLock) {
+            if (waitingForKeyFrame) {
+                NALUnitType type = getKeyNALUnitType(accessUnit);
+                if (type == NALUnitType.IDR_SLICE) {
+                    waitingForKeyFrame = false;
+                } else if (type == null) {
+                    stats.onFrameDropped();
+                    return;
+                }
+                // Parameter sets are still decoded while waiting as the key frame would need them
+            }
+            if (!queue.offer(accessUnit)) {
+                // The decoder cannot keep up, skip ahead to the next key frame
+                int dropped = queue.size();
+                queue.clear();
+                if (getKeyNALUnitType(accessUnit) == NALUnitType.IDR_SLICE) {
+                    // The access unit is the key frame, so decoding can resume from it
+                    queue.offer(accessUnit);
+                } else {
+                    dropped++;
+                    waitingForKeyFrame = true;
+                }
+                for (int i = 0; i < dropped; i++) stats.onDecodeDropped();
+            }
+        }
+    }
+
+    /** Returns IDR_SLICE if the access unit contains a key frame, SPS or PPS if it contains parameter sets
+     * without a key frame, and null otherwise. **/
+    private static NALUnitType getKeyNALUnitType(@NotNull byte[] accessUnit) {
+        ByteBuffer data = ByteBuffer.wrap(accessUnit);
+        ByteBuffer segment;
+        NALUnitType found = null;
+        while ((segment = H264Utils.nextNALUnit(data)) != null) {
+            if (!segment.hasRemaining()) continue;
+            NALUnitType type = NALUnit.read(segment).type;
+            if (type == NALUnitType.IDR_SLICE) return type;
+            if (type == NALUnitType.SPS || type == NALUnitType.PPS) found = type;
+        }
+        return found;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            byte[] accessUnit;
+            try {
+                accessUnit = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            decodeAccessUnit(accessUnit);
+        }
+        queue.clear();
+    }
+
+    private void decodeAccessUnit(@NotNull byte[] accessUnit) {
+        long decodeStart = System.nanoTime();
+        Picture picture;
+        try {
+            picture = decoder.decodeFrame(ByteBuffer.wrap(accessUnit), yuvBuffer);
+        } catch (RuntimeException e) {
+            Log.w("H264StreamDecoder", "Unable to decode access unit: " + e.getMessage());
+            output.getVideoStats().onDecodeDropped();
+            skipToKeyFrame();
+            return;
+        }
+        // Access units that only contain parameter sets do not produce a picture
+        if (picture == null) return;
+
+        BitmapPool pool = output.getBitmapPool();
+        Bitmap bitmap = pool.acquire(picture.getCroppedWidth(), picture.getCroppedHeight(),
+                Bitmap.Config.ARGB_8888);
+        AndroidUtil.toBitmap(picture, bitmap);
+        output.getVideoStats().onFrameDecoded((System.nanoTime() - decodeStart) / 1000);
+        output.setDecodedImage(bitmap);
+    }
+
+    /** Drops the queued access units up to the next key frame, as they depend on the one that could not be
+     * decoded. Parameter sets are kept for the key frame. If no key frame is queued, the gate is closed so that
+     * the access units that arrive are dropped until there is one. **/
+    private void skipToKeyFrame() {
+        VideoStats stats = output.getVideoStats();
+        synchronized (keyFrameLock) {
+            Iterator<byte[]> queued = queue.iterator();
+            while (queued.hasNext()) {
+                NALUnitType type = getKeyNALUnitType(queued.next());
+                if (type == NALUnitType.IDR_SLICE) return;
+                if (type == null) {
+                    queued.remove();
+                    stats.onDecodeDropped();
+                }
+            }
+            waitingForKeyFrame = true;
+        }
+    }
+
+    /** Stops the thread, any queued access units are discarded. **/
+    public void quit() {
+        running = false;
+        interrupt();
+    }
+}
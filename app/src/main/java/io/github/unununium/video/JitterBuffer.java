@@ -0,0 +1,213 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import android.os.SystemClock;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+
+/** A playout buffer that holds frames back for a target delay, so that network jitter does not show up as stutter.
+ * The target delay adapts to the variance of the transit time of the frames, within the bounds that are set.
+ * Setting both bounds to 0 gives minimum latency, where the latest frame that has arrived is always shown. **/
+public class JitterBuffer implements JpegDecoderPool.FrameSource {
+    /** Called for frames that are discarded by the buffer, so that their resources can be released. **/
+    public interface OnFrameDroppedListener {
+        void onFrameDropped(@NotNull VideoFrame frame);
+    }
+
+    private static final int CAPACITY = 90; // 3 seconds at 30 fps, which is above MAX_BUFFER
+    private static final double STATS_GAIN = 1 / 16.0; // Same smoothing as the RFC 3550 jitter estimate
+    private static final double CLOCK_GAIN = 1 / 32.0;
+    private static final double DEVIATION_MULTIPLIER = 3;
+    private static final double TARGET_DECREASE_GAIN = 1 / 64.0; // Shrinks slowly to avoid oscillating
+    private static final double BASE_TRANSIT_CREEP = 1 / 512.0;
+
+    private final ArrayDeque<VideoFrame> frames = new ArrayDeque<>(CAPACITY);
+    private final OnFrameDroppedListener dropListener;
+    private final long startDelayMs;
+    private final long rebufferDelayMs;
+    private long minDelayMs = 0;
+    private long maxDelayMs = 0;
+    private boolean closed = false;
+
+    // Media clock, taken from the capture time if the frames have it and synthesised from the arrival times otherwise
+    private long lastArrivalMs = -1;
+    private double lastMediaMs = 0;
+    private double frameIntervalMs = 0;
+
+    // Transit time statistics, relative to the fastest frame seen
+    private double baseTransitMs = Double.NaN;
+    private double transitMeanMs = 0;
+    private double transitVarianceMs = 0;
+    private double targetDelayMs;
+    private long lateFrames = 0;
+
+    /** @param startDelayMs the delay used before any jitter has been measured.
+     * @param rebufferDelayMs the minimum delay used after a frame arrived too late to be played. **/
+    public JitterBuffer(long startDelayMs, long rebufferDelayMs, @NotNull OnFrameDroppedListener dropListener) {
+        this.startDelayMs = startDelayMs;
+        this.rebufferDelayMs = rebufferDelayMs;
+        this.dropListener = dropListener;
+        this.targetDelayMs = startDelayMs;
+    }
+
+    /** Sets the bounds of the target delay. Both being 0 pins the buffer to minimum latency. **/
+    public synchronized void setDelayBounds(long minDelayMs, long maxDelayMs) {
+        this.minDelayMs = minDelayMs;
+        this.maxDelayMs = Math.max(minDelayMs, maxDelayMs);
+        targetDelayMs = clamp(startDelayMs);
+        notifyAll();
+    }
+
+    /** Adds a frame that has just arrived. Called from the network thread. **/
+    public void push(@NotNull VideoFrame frame) {
+        VideoFrame overflow = null;
+        synchronized (this) {
+            if (closed) {
+                overflow = frame;
+            } else {
+                updateStatistics(frame);
+                if (frames.size() >= CAPACITY) overflow = frames.pollFirst();
+                frames.addLast(frame);
+                notifyAll();
+            }
+        }
+        if (overflow != null) dropListener.onFrameDropped(overflow);
+    }
+
+    private void updateStatistics(@NotNull VideoFrame frame) {
+        long arrivalMs = frame.arrivalTimeMs;
+        if (frame.captureTimeMs >= 0) {
+            if (lastArrivalMs >= 0 && arrivalMs - lastArrivalMs > maxDelayMs + rebufferDelayMs) {
+                baseTransitMs = Double.NaN;
+            }
+            frame.mediaTimeMs = frame.captureTimeMs;
+        } else if (lastArrivalMs < 0 || arrivalMs - lastArrivalMs > maxDelayMs + rebufferDelayMs) {
+            // First frame, or the stream had stalled, so the media clock starts over
+            frame.mediaTimeMs = arrivalMs;
+            frameIntervalMs = 0;
+            baseTransitMs = Double.NaN;
+        } else {
+            long interval = arrivalMs - lastArrivalMs;
+            frameIntervalMs = frameIntervalMs == 0 ? interval
+                    : frameIntervalMs + (interval - frameIntervalMs) * STATS_GAIN;
+            // The media clock advances by the average interval and is slowly pulled towards the arrival times
+            double predicted = lastMediaMs + frameIntervalMs;
+            frame.mediaTimeMs = Math.round(predicted + (arrivalMs - predicted) * CLOCK_GAIN);
+        }
+        lastArrivalMs = arrivalMs;
+        lastMediaMs = frame.mediaTimeMs;
+
+        double transit = arrivalMs - frame.mediaTimeMs;
+        if (Double.isNaN(baseTransitMs) || transit < baseTransitMs) {
+            baseTransitMs = transit;
+        } else {
+            // Allows the base to follow clock drift upwards
+            baseTransitMs += (transit - baseTransitMs) * BASE_TRANSIT_CREEP;
+        }
+        double excess = transit - baseTransitMs;
+        double deviation = excess - transitMeanMs;
+        transitMeanMs += deviation * STATS_GAIN;
+        transitVarianceMs += (deviation * deviation - transitVarianceMs) * STATS_GAIN;
+
+        double adaptiveTarget = clamp(transitMeanMs + DEVIATION_MULTIPLIER * Math.sqrt(transitVarianceMs));
+        if (maxDelayMs > 0 && arrivalMs > getPlayoutTime(frame)) {
+            // Arrived after it should have been shown, so more buffering is needed
+            lateFrames++;
+            targetDelayMs = clamp(Math.max(Math.max(adaptiveTarget, excess), rebufferDelayMs));
+        } else if (adaptiveTarget > targetDelayMs) {
+            targetDelayMs = adaptiveTarget;
+        } else {
+            targetDelayMs += (adaptiveTarget - targetDelayMs) * TARGET_DECREASE_GAIN;
+        }
+    }
+
+    private long getPlayoutTime(@NotNull VideoFrame frame) {
+        return Math.round(frame.mediaTimeMs + baseTransitMs + targetDelayMs);
+    }
+
+    private double clamp(double delayMs) {
+        return Math.max(minDelayMs, Math.min(maxDelayMs, delayMs));
+    }
+
+    /** Waits until a frame is due to be shown and returns it. Returns null if the buffer has been closed.
+     * If several frames are due at once, only the latest one is returned and the rest are dropped. **/
+    @Override
+    public VideoFrame take() throws InterruptedException {
+        while (true) {
+            VideoFrame due = null;
+            ArrayDeque<VideoFrame> skipped = null;
+            synchronized (this) {
+                if (closed) return null;
+                long now = SystemClock.elapsedRealtime();
+                while (!frames.isEmpty() && getPlayoutTime(frames.peekFirst()) <= now) {
+                    if (due != null) {
+                        if (skipped == null) skipped = new ArrayDeque<>();
+                        skipped.addLast(due);
+                    }
+                    due = frames.pollFirst();
+                }
+                if (due == null) {
+                    if (frames.isEmpty()) wait();
+                    else wait(Math.max(1, getPlayoutTime(frames.peekFirst()) - now));
+                    continue;
+                }
+            }
+            if (skipped != null) {
+                for (VideoFrame frame : skipped) dropListener.onFrameDropped(frame);
+            }
+            return due;
+        }
+    }
+
+    /** Wakes up any waiting consumer and drops all buffered frames. **/
+    public void close() {
+        ArrayDeque<VideoFrame> remaining;
+        synchronized (this) {
+            closed = true;
+            remaining = new ArrayDeque<>(frames);
+            frames.clear();
+            lastArrivalMs = -1;
+            notifyAll();
+        }
+        for (VideoFrame frame : remaining) dropListener.onFrameDropped(frame);
+    }
+
+    /** Allows the buffer to accept frames again after it has been closed. **/
+    public synchronized void reopen() {
+        closed = false;
+        targetDelayMs = clamp(startDelayMs);
+    }
+
+    //****** Start of getter functions ******//
+
+    public synchronized long getTargetDelayMs() {
+        return Math.round(targetDelayMs);
+    }
+
+    public synchronized int getBufferedFrameCount() {
+        return frames.size();
+    }
+
+    public synchronized long getLateFrameCount() {
+        return lateFrames;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+package io.github.unununium.video;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.util.Log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+
+/** Decodes JPEG frames on several worker threads once they are due, and passes them on in the order they were due.
+ * The workers take the frames from the jitter buffer, so frames are only decoded when they are about to be shown
+ * and the frames waiting in the buffer stay compressed. Frames are numbered when a worker takes them, and a decoded
+ * frame is held back until every frame before it is done. A frame that takes too long is skipped instead of holding
+ * back the ones behind it, and is dropped when it does finish. Frames that are already decoded, such as those from
+ * the H.264 decoder, are passed on in order without being decoded again.
+ * At most a worker, two held back frames and a waiting frame per worker are decoded at once. **/
+public class JpegDecoderPool {
+    /** Where the workers take the frames from, blocking until one is due. Returns null once it has been closed. **/
+    public interface FrameSource {
+        @Nullable
+        VideoFrame take() throws InterruptedException;
+    }
+
+    /** Decodes a frame on a worker, returning the decoded frame or null if it could not be decoded. **/
+    interface FrameDecoder {
+        @Nullable
+        VideoFrame decode(@NotNull VideoFrame frame);
+    }
+
+    /** Creates the decoder of a worker, as each worker needs its own. **/
+    interface FrameDecoderFactory {
+        @NotNull
+        FrameDecoder create();
+    }
+
+    private static final int MAX_WORKERS = 4;
+
+    private final FrameSource source;
+    private final BitmapPool bitmapPool;
+    private final VideoStats stats;
+    private final Worker[] workers;
+    // Workers take frames one at a time, so that frames are numbered in the order they were due
+    private final Object takeLock = new Object();
+    // Decoded frames waiting for the ones before them, indexed by sequence number
+    private final Completed[] completed;
+    // Frames in order that wait for the consumer, the oldest is dropped when it falls behind
+    private final ArrayDeque<VideoFrame> ready;
+    private final int readyCapacity;
+    private long nextSequence = 0;
+    private long nextOutputSequence = 0;
+    private boolean running = true;
+    private volatile boolean useRgb565 = false;
+
+    public JpegDecoderPool(@NotNull FrameSource source, @NotNull BitmapPool bitmapPool,
+                           @NotNull FrameTransform transform, @NotNull VideoStats stats) {
+        this(source, bitmapPool, stats, getDefaultWorkerCount(), null);
+        for (int i = 0; i < workers.length; i++) {
+            JpegFrameDecoder decoder = new JpegFrameDecoder(bitmapPool, transform, stats);
+            workers[i] = new Worker(i, new JpegDecoder(decoder));
+        }
+    }
+
+    /** @param factory creates the decoder of each worker, or null if the caller sets up the workers. **/
+    JpegDecoderPool(@NotNull FrameSource source, @NotNull BitmapPool bitmapPool, @NotNull VideoStats stats,
+                    int workerCount, @Nullable FrameDecoderFactory factory) {
+        this.source = source;
+        this.bitmapPool = bitmapPool;
+        this.stats = stats;
+        workerCount = Math.max(1, workerCount);
+        completed = new Completed[workerCount * 2];
+        for (int i = 0; i < completed.length; i++) completed[i] = new Completed();
+        readyCapacity = workerCount;
+        ready = new ArrayDeque<>(readyCapacity);
+        workers = new Worker[workerCount];
+        if (factory != null) {
+            for (int i = 0; i < workerCount; i++) workers[i] = new Worker(i, factory.create());
+        }
+    }
+
+    /** Half of the cores are left for the render thread, the UI and the connection. **/
+    public static int getDefaultWorkerCount() {
+        return Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public void start() {
+        for (Worker worker : workers) worker.start();
+    }
+
+    /** Sets whether frames are decoded as RGB_565, see JpegFrameDecoder. **/
+    public void setUseRgb565(boolean useRgb565) {
+        this.useRgb565 = useRgb565;
+    }
+
+    /** Waits for the next decoded frame in order. Returns null once the pool has been stopped. **/
+    @Nullable
+    public synchronized VideoFrame take() throws InterruptedException {
+        while (running && ready.isEmpty()) wait();
+        if (!running) return null;
+        return ready.pollFirst();
+    }
+
+    /** Numbers a frame that a worker has taken from the source. **/
+    private synchronized long reserveSequence() {
+        // There is no room to hold back another frame, so the oldest unfinished one is given up on
+        while (nextSequence - nextOutputSequence >= completed.length) {
+            nextOutputSequence++;
+            flushCompleted();
+        }
+        return nextSequence++;
+    }
+
+    /** Stores the result of a worker, and passes on every frame that is no longer waiting for an earlier one.
+     * The decoded frame is null if the frame could not be decoded. **/
+    private synchronized void onFrameDecoded(long sequence, @Nullable VideoFrame decoded) {
+        if (!running || sequence < nextOutputSequence) {
+            // Skipped while it was being decoded, a newer frame has already been passed on
+            if (decoded != null) {
+                bitmapPool.release(decoded.bitmap);
+                stats.onDecodeDropped();
+            }
+            return;
+        }
+        Completed slot = completed[(int) (sequence % completed.length)];
+        slot.frame = decoded;
+        slot.done = true;
+        flushCompleted();
+    }
+
+    private void flushCompleted() {
+        while (true) {
+            Completed slot = completed[(int) (nextOutputSequence % completed.length)];
+            if (!slot.done) return;
+            if (slot.frame != null) {
+                if (ready.size() >= readyCapacity) {
+                    // The consumer fell behind, the newest frames are the ones worth showing
+                    bitmapPool.release(ready.pollFirst().bitmap);
+                    stats.onFrameDropped();
+                }
+                ready.addLast(slot.frame);
+                notifyAll();
+            }
+            slot.clear();
+            nextOutputSequence++;
+        }
+    }
+
+    /** Stops the workers, any held back or waiting frames are discarded. The source should be closed first, so
+     * that the worker waiting on it returns. **/
+    public void quit() {
+        synchronized (this) {
+            running = false;
+            for (Completed slot : completed) {
+                if (slot.frame != null) bitmapPool.release(slot.frame.bitmap);
+                slot.clear();
+            }
+            for (VideoFrame frame : ready) bitmapPool.release(frame.bitmap);
+            ready.clear();
+            notifyAll();
+        }
+        for (Worker worker : workers) worker.interrupt();
+        for (Worker worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static final class Completed {
+        VideoFrame frame;
+        boolean done;
+
+        void clear() {
+            frame = null;
+            done = false;
+        }
+    }
+
+    /** Decodes with a JpegFrameDecoder, only decoding the visible region when the view is zoomed in. **/
+    private final class JpegDecoder implements FrameDecoder {
+        private final JpegFrameDecoder decoder;
+        private final RectF region = new RectF();
+        private FrameHasher hasher = null;
+
+        JpegDecoder(@NotNull JpegFrameDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Nullable
+        @Override
+        public VideoFrame decode(@NotNull VideoFrame frame) {
+            decoder.setUseRgb565(useRgb565);
+            Bitmap bitmap = decoder.decode(frame.data, frame.dataOffset, frame.dataLength, region);
+            if (bitmap == null) {
+                Log.w("JpegDecoderPool", "Unable to decode frame of " + frame.dataLength + " bytes");
+                return null;
+            }
+            if (region.isEmpty()) {
+                return VideoFrame.fromBitmap(bitmap, null, frame.captureTimeMs, frame.arrivalTimeMs);
+            }
+            // The region travels with the frame, so it cannot be reused
+            VideoFrame decoded = VideoFrame.fromBitmap(bitmap, new RectF(region), frame.captureTimeMs,
+                    frame.arrivalTimeMs);
+            hashWholeFrame(frame, decoded);
+            return decoded;
+        }
+
+        /** The frozen feed detector compares whole frames, so while zoomed in they are hashed from a thumbnail,
+         * as the decoded region moves with the view. **/
+        private void hashWholeFrame(@NotNull VideoFrame frame, @NotNull VideoFrame decoded) {
+            Bitmap thumbnail = decoder.decodeThumbnail(frame.data, frame.dataOffset, frame.dataLength);
+            if (thumbnail == null) return;
+            if (hasher == null) hasher = new FrameHasher();
+            decoded.contentHash = hasher.hash(thumbnail);
+            decoded.hasContentHash = true;
+            bitmapPool.release(thumbnail);
+        }
+    }
+
+    private final class Worker extends Thread {
+        private final FrameDecoder decoder;
+
+        Worker(int index, @NotNull FrameDecoder decoder) {
+            super("JpegDecoderPool-" + index);
+            this.decoder = decoder;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                VideoFrame frame;
+                long sequence;
+                try {
+                    synchronized (takeLock) {
+                        frame = source.take();
+                        if (frame == null) break; // Source closed
+                        sequence = reserveSequence();
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (frame.isDecoded()) {
+                    onFrameDecoded(sequence, frame);
+                    continue;
+                }
+                long decodeStart = System.nanoTime();
+                VideoFrame decoded = decoder.decode(frame);
+                if (decoded == null) {
+                    stats.onDecodeDropped();
+                } else {
+                    stats.onFrameDecoded((System.nanoTime() - decodeStart) / 1000);
+                }
+                onFrameDecoded(sequence, decoded);
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.Log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/** Decodes JPEG frames into bitmaps taken from a BitmapPool.
+ * Frames are subsampled while decoding when they are much larger than the area they are drawn into.
+ * When the view is zoomed in, only the visible region of the frame is decoded.
+ * Not thread safe, each decoding thread should have its own instance. **/
+public class JpegFrameDecoder {
+    private static final int THUMBNAIL_SAMPLE_SIZE = 8;
+    private final BitmapPool pool;
+    private final FrameTransform transform;
+    private final VideoStats stats;
+    private final BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
+    private final BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+    private final BitmapFactory.Options thumbnailOptions = new BitmapFactory.Options();
+    private final RectF visibleRegion = new RectF();
+    private final Rect regionRect = new Rect();
+    private volatile boolean useRgb565 = false;
+    private int lastWidth = 0;
+    private int lastHeight = 0;
+    private Bitmap.Config lastConfig = null;
+
+    /** @param transform used to pick the sample size from the size the frame is drawn at, may be null
+     *                  to always decode the whole frame at full size.
+     *  @param stats counts the data that is copied while decoding, may be null. **/
+    public JpegFrameDecoder(@NotNull BitmapPool pool, @Nullable FrameTransform transform,
+                            @Nullable VideoStats stats) {
+        this.pool = pool;
+        this.transform = transform;
+        this.stats = stats;
+        boundsOptions.inJustDecodeBounds = true;
+        decodeOptions.inMutable = true;
+        thumbnailOptions.inMutable = true;
+        thumbnailOptions.inSampleSize = THUMBNAIL_SAMPLE_SIZE;
+    }
+
+    /** Sets whether frames are decoded as RGB_565 instead of ARGB_8888.
+     * JPEG frames have no alpha channel, so this halves the memory used with only a slight loss in colour. **/
+    public void setUseRgb565(boolean useRgb565) {
+        this.useRgb565 = useRgb565;
+    }
+
+    /** Decodes the whole frame, returning null if it is not a valid image.
+     * The returned bitmap should be released back to the pool once it is no longer drawn. **/
+    @Nullable
+    public Bitmap decode(@NotNull byte[] data, int offset, int length) {
+        return decode(data, offset, length, null);
+    }
+
+    /** Same as decode, but only decodes the visible region if the view is zoomed in. The region that was decoded
+     * is set as fractions of the frame size, or set to empty if the whole frame was decoded. **/
+    @Nullable
+    public Bitmap decode(@NotNull byte[] data, int offset, int length, @Nullable RectF region) {
+        if (region != null) region.setEmpty();
+        // Reading the header is cheap and tells us which pooled bitmap to decode into
+        BitmapFactory.decodeByteArray(data, offset, length, boundsOptions);
+        if (boundsOptions.outWidth <= 0 || boundsOptions.outHeight <= 0) return null;
+        if (region != null && transform != null && transform.isZoomed()) {
+            return decodeRegion(data, offset, length, region);
+        }
+
+        int sampleSize = transform == null ? 1
+                : transform.getSampleSize(boundsOptions.outWidth, boundsOptions.outHeight);
+        // The JPEG decoder rounds the subsampled size up
+        int width = (boundsOptions.outWidth + sampleSize - 1) / sampleSize;
+        int height = (boundsOptions.outHeight + sampleSize - 1) / sampleSize;
+        Bitmap.Config config = useRgb565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        Bitmap target = acquire(width, height, config);
+        decodeOptions.inSampleSize = sampleSize;
+        decodeOptions.inPreferredConfig = config;
+        decodeOptions.inBitmap = target;
+        Bitmap result;
+        try {
+            result = BitmapFactory.decodeByteArray(data, offset, length, decodeOptions);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be reused, fall back to a fresh allocation
+            Log.w("JpegFrameDecoder", "Unable to decode into pooled bitmap: " + e.getMessage());
+            decodeOptions.inBitmap = null;
+            result = BitmapFactory.decodeByteArray(data, offset, length, decodeOptions);
+        } finally {
+            decodeOptions.inBitmap = null;
+        }
+        if (result != target) pool.release(target);
+        return result;
+    }
+
+    /** Decodes the whole frame at an eighth of its size, ignoring the zoom, returning null if it is not a valid
+     * image. The returned bitmap should be released back to the pool. **/
+    @Nullable
+    public Bitmap decodeThumbnail(@NotNull byte[] data, int offset, int length) {
+        BitmapFactory.decodeByteArray(data, offset, length, boundsOptions);
+        if (boundsOptions.outWidth <= 0 || boundsOptions.outHeight <= 0) return null;
+        thumbnailOptions.inBitmap = pool.acquire((boundsOptions.outWidth + THUMBNAIL_SAMPLE_SIZE - 1)
+                / THUMBNAIL_SAMPLE_SIZE, (boundsOptions.outHeight + THUMBNAIL_SAMPLE_SIZE - 1)
+                / THUMBNAIL_SAMPLE_SIZE, Bitmap.Config.ARGB_8888);
+        Bitmap result;
+        try {
+            result = BitmapFactory.decodeByteArray(data, offset, length, thumbnailOptions);
+        } catch (IllegalArgumentException e) {
+            thumbnailOptions.inBitmap = null;
+            result = BitmapFactory.decodeByteArray(data, offset, length, thumbnailOptions);
+        }
+        if (result != thumbnailOptions.inBitmap) pool.release(thumbnailOptions.inBitmap);
+        thumbnailOptions.inBitmap = null;
+        return result;
+    }
+
+    /** Decodes only the part of the frame that is visible in the zoomed view, at the detail it is drawn at.
+     * As the region covers less of the view than the frame would, it is usually decoded with less subsampling. **/
+    @Nullable
+    private Bitmap decodeRegion(@NotNull byte[] data, int offset, int length, @NotNull RectF region) {
+        int frameWidth = boundsOptions.outWidth;
+        int frameHeight = boundsOptions.outHeight;
+        transform.setSourceSize(frameWidth, frameHeight);
+        transform.getVisibleRegion(visibleRegion);
+        int left = Math.max(0, (int) (visibleRegion.left * frameWidth));
+        int top = Math.max(0, (int) (visibleRegion.top * frameHeight));
+        int right = Math.min(frameWidth, (int) Math.ceil(visibleRegion.right * frameWidth));
+        int bottom = Math.min(frameHeight, (int) Math.ceil(visibleRegion.bottom * frameHeight));
+        int sampleSize = transform.getSampleSize(right - left, bottom - top);
+        // The region is aligned to the sample size, so the size of the decoded bitmap is exact
+        left -= left % sampleSize;
+        top -= top % sampleSize;
+        int width = (right - left) / sampleSize;
+        int height = (bottom - top) / sampleSize;
+        if (width <= 0 || height <= 0) return null;
+        regionRect.set(left, top, left + width * sampleSize, top + height * sampleSize);
+
+        BitmapRegionDecoder regionDecoder;
+        try {
+            regionDecoder = BitmapRegionDecoder.newInstance(data, offset, length, false);
+            // Unlike BitmapFactory, the region decoder keeps its own copy of the data
+            if (stats != null) stats.onBytesCopied(length);
+        } catch (IOException e) {
+            Log.w("JpegFrameDecoder", "Unable to read frame for region decoding: " + e.getMessage());
+            return null;
+        }
+        Bitmap.Config config = useRgb565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        Bitmap target = acquire(width, height, config);
+        decodeOptions.inSampleSize = sampleSize;
+        decodeOptions.inPreferredConfig = config;
+        decodeOptions.inBitmap = target;
+        Bitmap result;
+        try {
+            result = regionDecoder.decodeRegion(regionRect, decodeOptions);
+        } catch (IllegalArgumentException e) {
+            Log.w("JpegFrameDecoder", "Unable to decode region into pooled bitmap: " + e.getMessage());
+            decodeOptions.inBitmap = null;
+            result = regionDecoder.decodeRegion(regionRect, decodeOptions);
+        } finally {
+            decodeOptions.inBitmap = null;
+            regionDecoder.recycle();
+        }
+        if (result != target) pool.release(target);
+        if (result != null) {
+            region.set((float) regionRect.left / frameWidth, (float) regionRect.top / frameHeight,
+                    (float) regionRect.right / frameWidth, (float) regionRect.bottom / frameHeight);
+        }
+        return result;
+    }
+
+    /** Takes a bitmap of the given size from the pool, evicting the bitmaps of the previous size if it changed. **/
+    @NotNull
+    private Bitmap acquire(int width, int height, @NotNull Bitmap.Config config) {
+        if (width != lastWidth || height != lastHeight || config != lastConfig) {
+            // Resolution changed mid-stream, bitmaps of the old size would never be reused
+            pool.evictAllExcept(width, height, config);
+            lastWidth = width;
+            lastHeight = height;
+            lastConfig = config;
+        }
+        return pool.acquire(width, height, config);
+    }
+}
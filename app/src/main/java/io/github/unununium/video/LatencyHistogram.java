@@ -0,0 +1,64 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+/** A histogram of latencies in fixed buckets, which keeps every sample since it was cleared instead of a window
+ * of the latest ones, so that a whole measurement session can be summarised. **/
+public class LatencyHistogram {
+    public static final int BUCKET_MS = 5;
+    /** The last bucket holds all latencies of this many ms or more. **/
+    public static final int MAX_MS = 2000;
+    public static final int BUCKET_COUNT = MAX_MS / BUCKET_MS + 1;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long total = 0;
+
+    /** Adds a latency in ms. Negative latencies, which are within the error of the clock offset, count as 0. **/
+    public synchronized void add(long latencyMs) {
+        counts[(int) Math.min(BUCKET_COUNT - 1, Math.max(0, latencyMs) / BUCKET_MS)]++;
+        total++;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < BUCKET_COUNT; i++) counts[i] = 0;
+        total = 0;
+    }
+
+    //****** Start of getter functions ******//
+
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    public synchronized long getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    /** The upper edge in ms of the bucket that holds the given percentile (0 to 100), or 0 if it is empty. **/
+    public synchronized long getPercentile(double percentile) {
+        if (total == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target) return Math.min(MAX_MS, (long) (i + 1) * BUCKET_MS);
+        }
+        return MAX_MS;
+    }
+}
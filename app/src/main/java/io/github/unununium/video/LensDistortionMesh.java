@@ -0,0 +1,79 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import android.graphics.Matrix;
+import android.graphics.RectF;
+
+import org.jetbrains.annotations.NotNull;
+
+/** A mesh for Canvas.drawBitmapMesh that applies barrel distortion to a frame, which cancels out the pincushion
+ * distortion of the lenses in a headset. The mesh is only recalculated when the frame is drawn differently. **/
+public class LensDistortionMesh {
+    public static final int MESH_SIZE = 16;
+    // The coefficients of a typical phone headset, distortion grows with the square and the fourth power of the radius
+    private static final float K1 = 0.22f;
+    private static final float K2 = 0.24f;
+
+    private final float[] gridPoints = new float[(MESH_SIZE + 1) * (MESH_SIZE + 1) * 2];
+    private final float[] vertices = new float[gridPoints.length];
+    private final Matrix lastMatrix = new Matrix();
+    private final RectF lastViewport = new RectF();
+    private int lastBitmapWidth = 0;
+    private int lastBitmapHeight = 0;
+
+    /** Updates the mesh for a bitmap drawn into the viewport of an eye with the given matrix. **/
+    public void update(@NotNull Matrix drawMatrix, int bitmapWidth, int bitmapHeight, @NotNull RectF viewport) {
+        if (bitmapWidth == lastBitmapWidth && bitmapHeight == lastBitmapHeight && drawMatrix.equals(lastMatrix)
+                && viewport.equals(lastViewport)) return;
+        lastMatrix.set(drawMatrix);
+        lastViewport.set(viewport);
+        lastBitmapWidth = bitmapWidth;
+        lastBitmapHeight = bitmapHeight;
+
+        int index = 0;
+        for (int y = 0; y <= MESH_SIZE; y++) {
+            for (int x = 0; x <= MESH_SIZE; x++) {
+                gridPoints[index++] = (float) bitmapWidth * x / MESH_SIZE;
+                gridPoints[index++] = (float) bitmapHeight * y / MESH_SIZE;
+            }
+        }
+        drawMatrix.mapPoints(vertices, gridPoints);
+
+        // The radius is measured from the centre of the eye, with 1 being the edge of the longer side
+        float centerX = viewport.centerX();
+        float centerY = viewport.centerY();
+        float radius = Math.max(viewport.width(), viewport.height()) / 2;
+        if (radius <= 0) return;
+        for (int i = 0; i < vertices.length; i += 2) {
+            float dx = (vertices[i] - centerX) / radius;
+            float dy = (vertices[i + 1] - centerY) / radius;
+            float r2 = dx * dx + dy * dy;
+            float scale = 1 / (1 + K1 * r2 + K2 * r2 * r2);
+            vertices[i] = centerX + dx * scale * radius;
+            vertices[i + 1] = centerY + dy * scale * radius;
+        }
+    }
+
+    /** The vertices to pass to drawBitmapMesh, with MESH_SIZE as both the mesh width and height. **/
+    @NotNull
+    public float[] getVertices() {
+        return vertices;
+    }
+}
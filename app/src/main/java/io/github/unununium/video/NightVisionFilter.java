@@ -0,0 +1,197 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import android.graphics.Bitmap;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Brightens a dark camera feed with a gamma and contrast curve, and optionally histogram equalization.
+ * Each frame is split into bands of rows that are processed in parallel, the calling thread taking the first band.
+ * If the average time per frame goes over the budget, the histogram is only updated every few frames.
+ * Not thread safe, it should only be used from the decode thread. **/
+public class NightVisionFilter {
+    private static final int MAX_BANDS = 4;
+    private static final long FRAME_BUDGET_NS = 8_000_000; // Leaves time for decoding a 720p frame at 30 fps
+    private static final int LIGHT_HISTOGRAM_INTERVAL = 8; // Frames between histogram updates when over budget
+    private static final float GAMMA = 0.5f; // Below 1 brightens the shadows
+    private static final float CONTRAST = 1.3f;
+    // A fully equalized image is very noisy at night, so it is blended with the original levels
+    private static final float EQUALIZATION_STRENGTH = 0.6f;
+
+    private static final int PASS_HISTOGRAM = 0;
+    private static final int PASS_APPLY = 1;
+
+    private final ExecutorService executor;
+    private final Band[] bands;
+    private final int[] toneCurve = new int[256];
+    private final int[] lut = new int[256];
+    private final int[] histogram = new int[256];
+    private int[] pixels = new int[0];
+    private int width = 0;
+    private int height = 0;
+    private boolean equalize = true;
+    private boolean lightMode = false;
+    private boolean lutIsToneCurve = false;
+    private int framesSinceHistogram = 0;
+    private long averageTimeNs = 0;
+
+    public NightVisionFilter() {
+        int bandCount = Math.max(1, Math.min(MAX_BANDS, Runtime.getRuntime().availableProcessors()));
+        bands = new Band[bandCount];
+        for (int i = 0; i < bandCount; i++) bands[i] = new Band();
+        executor = bandCount > 1 ? Executors.newFixedThreadPool(bandCount - 1,
+                runnable -> new Thread(runnable, "NightVisionFilter")) : null;
+        for (int i = 0; i < 256; i++) {
+            float value = (float) Math.pow(i / 255f, GAMMA);
+            value = (value - 0.5f) * CONTRAST + 0.5f;
+            toneCurve[i] = clamp(Math.round(value * 255));
+        }
+    }
+
+    /** Sets whether histogram equalization is applied before the tone curve. **/
+    public void setEqualize(boolean equalize) {
+        this.equalize = equalize;
+    }
+
+    /** Applies the filter to the bitmap in place. Returns false if the bitmap could not be changed. **/
+    public boolean apply(@NotNull Bitmap bitmap) {
+        if (!bitmap.isMutable()) return false;
+        long start = System.nanoTime();
+        width = bitmap.getWidth();
+        height = bitmap.getHeight();
+        if (pixels.length < width * height) pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+
+        if (!equalize) {
+            if (!lutIsToneCurve) System.arraycopy(toneCurve, 0, lut, 0, 256);
+            lutIsToneCurve = true;
+        } else if (lutIsToneCurve || !lightMode || framesSinceHistogram >= LIGHT_HISTOGRAM_INTERVAL) {
+            if (!runBands(PASS_HISTOGRAM)) return false;
+            buildEqualizedLut();
+            lutIsToneCurve = false;
+            framesSinceHistogram = 0;
+        } else {
+            // Over budget, the levels of a recent frame are close enough
+            framesSinceHistogram++;
+        }
+        if (!runBands(PASS_APPLY)) return false;
+        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+
+        long elapsed = System.nanoTime() - start;
+        averageTimeNs = averageTimeNs == 0 ? elapsed : (averageTimeNs * 7 + elapsed) / 8;
+        // Switching back is only done well under the budget, so that it does not switch on every frame
+        if (!lightMode && averageTimeNs > FRAME_BUDGET_NS) lightMode = true;
+        else if (lightMode && averageTimeNs < FRAME_BUDGET_NS / 2) lightMode = false;
+        return true;
+    }
+
+    /** Runs a pass over every band, returns false if it was interrupted. **/
+    private boolean runBands(int pass) {
+        CountDownLatch latch = new CountDownLatch(bands.length - 1);
+        int rowsPerBand = (height + bands.length - 1) / bands.length;
+        for (int i = 0; i < bands.length; i++) {
+            bands[i].set(pass, Math.min(height, i * rowsPerBand), Math.min(height, (i + 1) * rowsPerBand), latch);
+            if (i > 0) executor.execute(bands[i]);
+        }
+        bands[0].process();
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    private void buildEqualizedLut() {
+        System.arraycopy(bands[0].histogram, 0, histogram, 0, 256);
+        for (int i = 1; i < bands.length; i++) {
+            for (int level = 0; level < 256; level++) histogram[level] += bands[i].histogram[level];
+        }
+        int total = width * height;
+        int cumulative = 0;
+        int firstCount = 0;
+        for (int level = 0; level < 256; level++) {
+            cumulative += histogram[level];
+            if (firstCount == 0) firstCount = cumulative;
+            int equalized = total > firstCount
+                    ? (int) ((long) (cumulative - firstCount) * 255 / (total - firstCount)) : level;
+            lut[level] = toneCurve[clamp(Math.round(level + (equalized - level) * EQUALIZATION_STRENGTH))];
+        }
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    /** Shuts down the worker threads. **/
+    public void release() {
+        if (executor != null) executor.shutdownNow();
+    }
+
+    private final class Band implements Runnable {
+        final int[] histogram = new int[256];
+        private int pass;
+        private int startRow;
+        private int endRow;
+        private CountDownLatch latch;
+
+        void set(int pass, int startRow, int endRow, @NotNull CountDownLatch latch) {
+            this.pass = pass;
+            this.startRow = startRow;
+            this.endRow = endRow;
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            try {
+                process();
+            } finally {
+                latch.countDown();
+            }
+        }
+
+        void process() {
+            int start = startRow * width;
+            int end = endRow * width;
+            if (pass == PASS_HISTOGRAM) {
+                Arrays.fill(histogram, 0);
+                for (int i = start; i < end; i++) {
+                    int pixel = pixels[i];
+                    // Integer approximation of the luma
+                    int luma = (((pixel >> 16) & 0xff) * 77 + ((pixel >> 8) & 0xff) * 150 + (pixel & 0xff) * 29) >> 8;
+                    histogram[luma]++;
+                }
+            } else {
+                for (int i = start; i < end; i++) {
+                    int pixel = pixels[i];
+                    pixels[i] = (pixel & 0xff000000) | (lut[(pixel >> 16) & 0xff] << 16)
+                            | (lut[(pixel >> 8) & 0xff] << 8) | lut[pixel & 0xff];
+                }
+            }
+        }
+    }
+}
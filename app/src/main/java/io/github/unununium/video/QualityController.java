@@ -0,0 +1,169 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import org.jetbrains.annotations.NotNull;
+
+/** Picks the video quality that the phone can keep up with, from what it measures in the video pipeline.
+ * It steps down a level when decoding is too slow, frames are lost or cannot be decoded in time, or the network
+ * cannot deliver the frame rate, and steps up again only after a longer healthy period, so that it does not
+ * oscillate. Frames that the client discards by itself, such as stale frames or frames replaced before they were
+ * shown, do not count against the level. **/
+public class QualityController {
+    /** Called when a different quality should be requested from the robot. **/
+    public interface OnQualityChangeListener {
+        void onQualityChanged(@NotNull Level level);
+    }
+
+    /** A quality level that can be requested from the robot. **/
+    public static final class Level {
+        public final int width;
+        public final int height;
+        public final int quality; // JPEG quality, 0 to 100
+        public final int fps;
+
+        public Level(int width, int height, int quality, int fps) {
+            this.width = width;
+            this.height = height;
+            this.quality = quality;
+            this.fps = fps;
+        }
+    }
+
+    // Ordered from the best quality to the lowest
+    private static final Level[] LEVELS = new Level[]{
+            new Level(1280, 720, 80, 30),
+            new Level(960, 540, 75, 30),
+            new Level(854, 480, 70, 25),
+            new Level(640, 360, 60, 20),
+            new Level(426, 240, 50, 15)
+    };
+    private static final int DOWNGRADE_AFTER = 2; // Consecutive overloaded samples before stepping down
+    private static final int UPGRADE_AFTER = 5; // Consecutive healthy samples before stepping up
+    private static final int SETTLE_SAMPLES = 2; // Samples ignored after a change while the pipeline settles
+    private static final double OVERLOADED_DECODE_RATIO = 0.8; // Of the frame interval
+    private static final double HEALTHY_DECODE_RATIO = 0.5;
+    private static final double OVERLOADED_DROP_RATIO = 0.15;
+    private static final double HEALTHY_DROP_RATIO = 0.02;
+    private static final double OVERLOADED_FPS_RATIO = 0.75; // Of the requested frame rate
+    private static final double HEALTHY_FPS_RATIO = 0.9;
+
+    private final OnQualityChangeListener listener;
+    private int currentLevel = 0;
+    private int previousLevel = -1;
+    private boolean levelAcknowledged = false;
+    private int overloadedCount = 0;
+    private int healthyCount = 0;
+    private int settleCount = 0;
+    private long lastReceived = 0;
+    private long lastLost = 0;
+    private long lastDropped = 0;
+
+    public QualityController(@NotNull OnQualityChangeListener listener) {
+        this.listener = listener;
+    }
+
+    /** Takes a sample from the statistics of the view, using the frames received and dropped since the last sample. **/
+    public void sample(@NotNull VideoStats stats) {
+        long received = stats.getFramesReceived();
+        long lost = stats.getFramesLost();
+        long dropped = stats.getFramesDecodeDropped() + lost;
+        long receivedDelta = received - lastReceived;
+        long lostDelta = lost - lastLost;
+        long droppedDelta = dropped - lastDropped;
+        lastReceived = received;
+        lastLost = lost;
+        lastDropped = dropped;
+        // Nothing can be measured while no video is being sent
+        if (receivedDelta <= 0) return;
+        // Lost frames were never received, but were still sent
+        double dropRatio = (double) droppedDelta / (receivedDelta + lostDelta);
+        evaluate(stats.getDecodeTimeUs(95) / 1000.0, dropRatio, stats.getArrivalFps());
+    }
+
+    /** Evaluates a single sample of the pipeline. Returns true if the quality level was changed. **/
+    public synchronized boolean evaluate(double decodeTimeMs, double dropRatio, double arrivalFps) {
+        if (settleCount > 0) {
+            settleCount--;
+            return false;
+        }
+        Level level = LEVELS[currentLevel];
+        double frameIntervalMs = 1000.0 / level.fps;
+        boolean overloaded = decodeTimeMs > OVERLOADED_DECODE_RATIO * frameIntervalMs
+                || dropRatio > OVERLOADED_DROP_RATIO || arrivalFps < OVERLOADED_FPS_RATIO * getExpectedFps();
+        boolean healthy = decodeTimeMs < HEALTHY_DECODE_RATIO * frameIntervalMs && dropRatio < HEALTHY_DROP_RATIO
+                && (!levelAcknowledged || arrivalFps >= HEALTHY_FPS_RATIO * level.fps);
+        overloadedCount = overloaded ? overloadedCount + 1 : 0;
+        healthyCount = healthy ? healthyCount + 1 : 0;
+
+        if (overloadedCount >= DOWNGRADE_AFTER && currentLevel < LEVELS.length - 1) {
+            return setLevel(currentLevel + 1);
+        } else if (healthyCount >= UPGRADE_AFTER && currentLevel > 0) {
+            return setLevel(currentLevel - 1);
+        }
+        return false;
+    }
+
+    /** The frame rate that the robot should be sending at. Until it acknowledges the current level it may still be
+     * sending at the previous one, or not support changing the frame rate at all, so only a rate below the previous
+     * level's is then known to be too low. Returns 0 if the frame rate cannot be judged. **/
+    private int getExpectedFps() {
+        if (levelAcknowledged) return LEVELS[currentLevel].fps;
+        // After stepping down, or before any change, the robot may be sending at a rate that was never asked for
+        if (previousLevel < currentLevel) return 0;
+        return LEVELS[previousLevel].fps;
+    }
+
+    /** Called when the robot acknowledges that it is sending at the given level. **/
+    public synchronized void onLevelAcknowledged(@NotNull Level level) {
+        if (level == LEVELS[currentLevel]) levelAcknowledged = true;
+    }
+
+    private boolean setLevel(int level) {
+        previousLevel = currentLevel;
+        levelAcknowledged = false;
+        currentLevel = level;
+        overloadedCount = 0;
+        healthyCount = 0;
+        settleCount = SETTLE_SAMPLES;
+        listener.onQualityChanged(LEVELS[level]);
+        return true;
+    }
+
+    /** Goes back to the best quality, such as when a new connection is made. **/
+    public synchronized void reset() {
+        currentLevel = 0;
+        previousLevel = -1;
+        levelAcknowledged = false;
+        overloadedCount = 0;
+        healthyCount = 0;
+        settleCount = SETTLE_SAMPLES;
+    }
+
+    /** The highest level that could be requested, which decoding buffers should be sized for. **/
+    @NotNull
+    public static Level getBestLevel() {
+        return LEVELS[0];
+    }
+
+    @NotNull
+    public synchronized Level getCurrentLevel() {
+        return LEVELS[currentLevel];
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import java.nio.ByteBuffer;
+
+/** Keeps the compressed frames received over the last few seconds so that they can be looked at again.
+ * The frames are copied one after another into a single direct buffer allocated up front, and a fixed size index
+ * holds the offset, length and arrival time of each, so appending a frame does not allocate anything.
+ * When the buffer is full the oldest frames are overwritten. Frames are identified by their sequence number,
+ * which keeps counting up so that a frame that was overwritten can be told apart from a newer one. **/
+public class RewindBuffer {
+    // A frame is at least this large on average, which bounds the number of entries in the index
+    private static final int MIN_AVERAGE_FRAME_SIZE = 4096;
+
+    private ByteBuffer arena = null;
+    private int[] offsets = new int[0];
+    private int[] lengths = new int[0];
+    private long[] arrivalTimes = new long[0];
+    private int writePosition = 0;
+    private int oldestIndex = 0;
+    private int count = 0;
+    private long oldestSequence = 0;
+
+    /** @param capacity the size of the buffer in bytes, 0 disables it. **/
+    public RewindBuffer(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /** Reallocates the buffer with a new size, which discards all the frames in it. **/
+    public synchronized void setCapacity(int capacity) {
+        if (capacity == getCapacity()) return;
+        arena = capacity > 0 ? ByteBuffer.allocateDirect(capacity) : null;
+        int maxFrames = capacity > 0 ? Math.max(1, capacity / MIN_AVERAGE_FRAME_SIZE) : 0;
+        offsets = new int[maxFrames];
+        lengths = new int[maxFrames];
+        arrivalTimes = new long[maxFrames];
+        clear();
+    }
+
+    public synchronized void clear() {
+        writePosition = 0;
+        oldestIndex = 0;
+        oldestSequence += count;
+        count = 0;
+    }
+
+    /** Copies a frame into the buffer, overwriting the oldest frames if there is no space. Frames larger than the
+     * whole buffer are skipped. Returns whether the frame was copied. **/
+    public synchronized boolean append(byte[] data, int offset, int length, long arrivalTimeMs) {
+        if (arena == null || length > arena.capacity() || length <= 0) return false;
+        if (writePosition + length > arena.capacity()) {
+            // Frames are never split, so the end of the buffer is left unused and writing starts over at the front.
+            // The frames left in that space are older than those at the front, so they go first
+            while (count > 0 && offsets[oldestIndex] >= writePosition) removeOldest();
+            writePosition = 0;
+        }
+        int end = writePosition + length;
+        while (count > 0 && offsets[oldestIndex] < end
+                && offsets[oldestIndex] + lengths[oldestIndex] > writePosition) removeOldest();
+        if (count == offsets.length) removeOldest();
+
+        arena.position(writePosition);
+        arena.put(data, offset, length);
+        int index = (oldestIndex + count) % offsets.length;
+        offsets[index] = writePosition;
+        lengths[index] = length;
+        arrivalTimes[index] = arrivalTimeMs;
+        count++;
+        writePosition = end;
+        return true;
+    }
+
+    private void removeOldest() {
+        oldestIndex = (oldestIndex + 1) % offsets.length;
+        count--;
+        oldestSequence++;
+    }
+
+    /** Copies a frame into the destination array, which has to be at least getFrameLength long.
+     * Returns the length of the frame, or -1 if it is no longer in the buffer. **/
+    public synchronized int copyFrame(long sequence, byte[] destination) {
+        int index = getIndex(sequence);
+        if (index < 0) return -1;
+        arena.position(offsets[index]);
+        arena.get(destination, 0, lengths[index]);
+        return lengths[index];
+    }
+
+    private int getIndex(long sequence) {
+        long position = sequence - oldestSequence;
+        if (position < 0 || position >= count) return -1;
+        return (int) ((oldestIndex + position) % offsets.length);
+    }
+
+    //****** Start of getter functions ******//
+
+    /** Gets the sequence number of the oldest frame in the buffer. **/
+    public synchronized long getOldestSequence() {
+        return oldestSequence;
+    }
+
+    /** Gets the sequence number of the newest frame in the buffer, which is less than the oldest if it is empty. **/
+    public synchronized long getNewestSequence() {
+        return oldestSequence + count - 1;
+    }
+
+    /** Gets the length of a frame in bytes, or -1 if it is no longer in the buffer. **/
+    public synchronized int getFrameLength(long sequence) {
+        int index = getIndex(sequence);
+        return index < 0 ? -1 : lengths[index];
+    }
+
+    /** Gets the time that the frame arrived at, as elapsedRealtime, or -1 if it is no longer in the buffer. **/
+    public synchronized long getArrivalTime(long sequence) {
+        int index = getIndex(sequence);
+        return index < 0 ? -1 : arrivalTimes[index];
+    }
+
+    public synchronized int getCapacity() {
+        return arena == null ? 0 : arena.capacity();
+    }
+
+    /** Gets the number of bytes taken by the frames in the buffer. **/
+    public synchronized int getUsedBytes() {
+        if (count == 0) return 0;
+        int newestIndex = (oldestIndex + count - 1) % offsets.length;
+        int newestEnd = offsets[newestIndex] + lengths[newestIndex];
+        int oldestStart = offsets[oldestIndex];
+        return newestEnd > oldestStart ? newestEnd - oldestStart : arena.capacity() - oldestStart + newestEnd;
+    }
+}
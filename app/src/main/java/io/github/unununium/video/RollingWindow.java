@@ -0,0 +1,83 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import java.util.Arrays;
+
+/** A fixed-size window of the latest timestamped samples, used to measure rates and percentiles
+ * without allocating on every sample. **/
+public class RollingWindow {
+    private final long[] times;
+    private final long[] values;
+    private final long[] sortBuffer;
+    private int count = 0;
+    private int next = 0;
+
+    public RollingWindow(int size) {
+        times = new long[size];
+        values = new long[size];
+        sortBuffer = new long[size];
+    }
+
+    public synchronized void add(long timeMs, long value) {
+        times[next] = timeMs;
+        values[next] = value;
+        next = (next + 1) % times.length;
+        if (count < times.length) count++;
+    }
+
+    /** The number of samples per second over the window, ignoring windows older than the max age.
+     * Returns 0 if there are not enough recent samples. **/
+    public synchronized double getEventRate(long nowMs, long maxAgeMs) {
+        if (count < 2) return 0;
+        long newest = times[(next - 1 + times.length) % times.length];
+        long oldest = times[(next - count + times.length) % times.length];
+        if (nowMs - newest > maxAgeMs || newest <= oldest) return 0;
+        return (count - 1) * 1000.0 / (newest - oldest);
+    }
+
+    /** The sum of the values per second over the window, such as bytes per second.
+     * The value of the oldest sample is excluded as it arrived at the start of the measured span. **/
+    public synchronized double getValueRate(long nowMs, long maxAgeMs) {
+        if (count < 2) return 0;
+        int oldestIndex = (next - count + times.length) % times.length;
+        long newest = times[(next - 1 + times.length) % times.length];
+        long oldest = times[oldestIndex];
+        if (nowMs - newest > maxAgeMs || newest <= oldest) return 0;
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            if (i != oldestIndex) sum += values[i];
+        }
+        return sum * 1000.0 / (newest - oldest);
+    }
+
+    /** The value at the given percentile (0 to 100) of the samples in the window, or 0 if it is empty. **/
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) return 0;
+        System.arraycopy(values, 0, sortBuffer, 0, count);
+        Arrays.sort(sortBuffer, 0, count);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sortBuffer[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    public synchronized void clear() {
+        count = 0;
+        next = 0;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import android.util.Log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jcodec.common.Codec;
+import org.jcodec.common.MuxerTrack;
+import org.jcodec.common.VideoCodecMeta;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.Size;
+import org.jcodec.containers.mp4.boxes.VideoSampleEntry;
+import org.jcodec.containers.mp4.muxer.AbstractMP4MuxerTrack;
+import org.jcodec.containers.mp4.muxer.MP4Muxer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Records the received JPEG frames into an MP4 file on a background thread.
+ * The frames are stored as they were received (Motion JPEG), so nothing is decoded or encoded again, and each
+ * frame lasts until the next one arrived. If writing cannot keep up, frames are dropped from the recording
+ * rather than holding up the live video. **/
+public class SessionRecorder extends Thread {
+    /** Called from the recorder thread once the file is closed. The recording is not saved if no frame was
+     * written or writing failed. **/
+    public interface OnFinishedListener {
+        void onFinished(@NotNull SessionRecorder recorder, boolean saved);
+    }
+
+    private static final int QUEUE_CAPACITY = 30;
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    private static final int TIMESCALE = 1000; // The frame times are in ms
+    private static final long DEFAULT_FRAME_DURATION = 33;
+    private static final long POLL_INTERVAL = 100; // ms
+
+    private final File file;
+    private final OnFinishedListener listener;
+    private final BlockingQueue<Sample> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile boolean running = true;
+    private volatile int frameCount = 0;
+
+    public SessionRecorder(@NotNull File file, @Nullable OnFinishedListener listener) {
+        super("SessionRecorder");
+        this.file = file;
+        this.listener = listener;
+    }
+
+    /** Queues a frame to be written, it is dropped if the queue is full. Called from the Socket.IO thread.
+     * The data is written as it is, so it should not be modified afterwards. **/
+    public void offer(@NotNull byte[] data, long arrivalTimeMs) {
+        if (!running) return;
+        if (!queue.offer(new Sample(data, arrivalTimeMs))) droppedCount.incrementAndGet();
+    }
+
+    @Override
+    public void run() {
+        boolean saved = false;
+        try (BufferedSeekableChannel channel = new BufferedSeekableChannel(NIOUtils.writableChannel(file),
+                WRITE_BUFFER_SIZE)) {
+            MP4Muxer muxer = MP4Muxer.createMP4MuxerToChannel(channel);
+            MuxerTrack track = null;
+            Sample previous = null;
+            long pts = 0;
+            long lastDuration = DEFAULT_FRAME_DURATION;
+            // The frames that were queued before the recording was stopped are still written
+            while (running || !queue.isEmpty()) {
+                Sample sample;
+                try {
+                    sample = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (sample == null) continue;
+                if (track == null && (track = addTrack(muxer, sample.data)) == null) continue;
+                // A frame is only written once the next one arrives, as that is when its duration is known
+                if (previous != null) {
+                    lastDuration = Math.max(1, sample.arrivalTimeMs - previous.arrivalTimeMs);
+                    writeFrame(track, previous, pts, lastDuration);
+                    pts += lastDuration;
+                }
+                previous = sample;
+            }
+            if (previous != null) writeFrame(track, previous, pts, lastDuration);
+            if (track != null) muxer.finish();
+            saved = frameCount > 0;
+        } catch (IOException e) {
+            Log.w("SessionRecorder", "Unable to write recording: " + e.getMessage());
+        }
+        queue.clear();
+        if (frameCount == 0 && !file.delete()) Log.w("SessionRecorder", "Unable to delete empty recording");
+        if (listener != null) listener.onFinished(this, saved);
+    }
+
+    /** Adds the video track with the size of the first frame, returns null if it is not a valid JPEG image. **/
+    @Nullable
+    private MuxerTrack addTrack(@NotNull MP4Muxer muxer, @NotNull byte[] firstFrame) {
+        Size size = readJpegSize(firstFrame);
+        if (size == null) return null;
+        MuxerTrack track = muxer.addVideoTrack(Codec.JPEG, VideoCodecMeta.createSimpleVideoCodecMeta(size,
+                ColorSpace.YUV420J));
+        // jcodec labels JPEG tracks as mjpg, which neither its own demuxer nor most players recognise
+        ((AbstractMP4MuxerTrack) track).getEntries().set(0,
+                VideoSampleEntry.videoSampleEntry("jpeg", size, "JCodec"));
+        return track;
+    }
+
+    /** Reads the size of a JPEG image from its start of frame segment, returns null if none is found. **/
+    @Nullable
+    static Size readJpegSize(@NotNull byte[] data) {
+        if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) return null;
+        int offset = 2;
+        while (offset + 9 <= data.length) {
+            if ((data[offset] & 0xFF) != 0xFF) return null;
+            int marker = data[offset + 1] & 0xFF;
+            int length = ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+            // SOF0 to SOF15, apart from DHT (C4), JPG (C8) and DAC (CC)
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                int height = ((data[offset + 5] & 0xFF) << 8) | (data[offset + 6] & 0xFF);
+                int width = ((data[offset + 7] & 0xFF) << 8) | (data[offset + 8] & 0xFF);
+                return width > 0 && height > 0 ? new Size(width, height) : null;
+            }
+            offset += 2 + length;
+        }
+        return null;
+    }
+
+    private void writeFrame(@NotNull MuxerTrack track, @NotNull Sample sample, long pts, long duration)
+            throws IOException {
+        track.addFrame(Packet.createPacket(ByteBuffer.wrap(sample.data), pts, TIMESCALE, duration, frameCount,
+                Packet.FrameType.KEY, null));
+        frameCount++;
+    }
+
+    /** Stops the recording after the queued frames are written. The file is complete once the thread ends. **/
+    public void finish() {
+        running = false;
+    }
+
+    //****** Start of getter functions ******//
+
+    @NotNull
+    public File getFile() {
+        return file;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private static class Sample {
+        final byte[] data;
+        final long arrivalTimeMs;
+
+        Sample(byte[] data, long arrivalTimeMs) {
+            this.data = data;
+            this.arrivalTimeMs = arrivalTimeMs;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+/** Decides whether a frame is still worth decoding from its sequence number and sender timestamp.
+ * Frames that arrive out of order or later than the maximum age are discarded before they are decoded.
+ * As the clocks of the robot and the phone are not synchronised, the age is measured relative to the
+ * fastest frame seen so far. Not thread safe, it should only be used from the network thread. **/
+public class StaleFrameFilter {
+    private static final long RESTART_SEQUENCE_GAP = 1000;
+    private static final double BASE_OFFSET_CREEP = 1 / 512.0;
+
+    private final VideoStats stats;
+    private long maxAgeMs;
+    private long lastSequence = -1;
+    private double baseOffsetMs = Double.NaN;
+
+    public StaleFrameFilter(VideoStats stats, long maxAgeMs) {
+        this.stats = stats;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /** Returns true if the frame should be decoded. A negative sequence or timestamp means that it is unknown. **/
+    public boolean accept(long sequence, long captureTimeMs, long arrivalTimeMs) {
+        if (sequence >= 0) {
+            if (lastSequence >= 0 && sequence < lastSequence - RESTART_SEQUENCE_GAP) {
+                // The robot restarted its stream
+                reset();
+            } else if (sequence <= lastSequence) {
+                stats.onFrameReordered();
+                return false;
+            }
+            lastSequence = sequence;
+        }
+        if (captureTimeMs >= 0) {
+            double offset = arrivalTimeMs - captureTimeMs;
+            if (Double.isNaN(baseOffsetMs) || offset < baseOffsetMs) {
+                baseOffsetMs = offset;
+            } else {
+                // Allows the base to follow clock drift upwards
+                baseOffsetMs += (offset - baseOffsetMs) * BASE_OFFSET_CREEP;
+            }
+            if (offset - baseOffsetMs > maxAgeMs) {
+                stats.onFrameStale();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void reset() {
+        lastSequence = -1;
+        baseOffsetMs = Double.NaN;
+    }
+
+    public void setMaxAgeMs(long maxAgeMs) {
+        this.maxAgeMs = maxAgeMs;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.os.SystemClock;
+
+import org.jetbrains.annotations.NotNull;
+
+/** A frame that is passed from the connection to the render thread.
+ * It either holds the encoded JPEG data, or a bitmap that was already decoded from the stream. **/
+public class VideoFrame {
+    /** The encoded frame is the part of the data array given by the offset and length, so that a frame can be
+     * passed on from a larger receive buffer without copying it out. **/
+    public final byte[] data;
+    public final int dataOffset;
+    public final int dataLength;
+    public final Bitmap bitmap;
+    /** The region of the frame that the bitmap holds as fractions of its size, or null if it holds the whole frame. **/
+    public final RectF region;
+    public final long arrivalTimeMs;
+    /** The time the frame was captured on the robot's clock, or -1 if the server did not send it. **/
+    public final long captureTimeMs;
+    /** The position of the frame on the media clock, which is set by the JitterBuffer. **/
+    long mediaTimeMs = 0;
+    /** When the frame was decoded and due to be presented, in System.nanoTime. **/
+    long readyTimeNanos = 0;
+    /** The average hash of the whole frame, for frames whose bitmap only holds the zoomed region. **/
+    long contentHash = 0;
+    boolean hasContentHash = false;
+    /** The stabilization correction set by the FrameStabilizer, in fractions of the frame size and radians. **/
+    float stabilizeX = 0;
+    float stabilizeY = 0;
+    float stabilizeAngle = 0;
+
+    private VideoFrame(byte[] data, int dataOffset, int dataLength, Bitmap bitmap, RectF region,
+                       long captureTimeMs, long arrivalTimeMs) {
+        this.data = data;
+        this.dataOffset = dataOffset;
+        this.dataLength = dataLength;
+        this.bitmap = bitmap;
+        this.region = region;
+        this.captureTimeMs = captureTimeMs;
+        this.arrivalTimeMs = arrivalTimeMs;
+    }
+
+    @NotNull
+    public static VideoFrame fromJpeg(@NotNull byte[] data, long captureTimeMs, long arrivalTimeMs) {
+        return fromJpeg(data, 0, data.length, captureTimeMs, arrivalTimeMs);
+    }
+
+    /** The data is not copied, so the array should not be changed until the frame has been decoded. **/
+    @NotNull
+    public static VideoFrame fromJpeg(@NotNull byte[] data, int offset, int length, long captureTimeMs,
+                                      long arrivalTimeMs) {
+        return new VideoFrame(data, offset, length, null, null, captureTimeMs, arrivalTimeMs);
+    }
+
+    /** The bitmap should have been taken from the BitmapPool of the view, as it would be released back to it. **/
+    @NotNull
+    public static VideoFrame fromBitmap(@NotNull Bitmap bitmap) {
+        return fromBitmap(bitmap, null, -1, SystemClock.elapsedRealtime());
+    }
+
+    @NotNull
+    public static VideoFrame fromBitmap(@NotNull Bitmap bitmap, RectF region, long captureTimeMs, long arrivalTimeMs) {
+        return new VideoFrame(null, 0, 0, bitmap, region, captureTimeMs, arrivalTimeMs);
+    }
+
+    public boolean isDecoded() {
+        return bitmap != null;
+    }
+}
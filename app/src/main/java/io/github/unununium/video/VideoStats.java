@@ -0,0 +1,184 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Counters for the video pipeline, which can be updated from any thread.
+ * Rates and decode times are measured over rolling windows of the latest frames. **/
+public class VideoStats {
+    private static final int WINDOW_SIZE = 64;
+    // Rates are reported as 0 if no frame has arrived for this long, instead of showing the last known rate
+    private static final long WINDOW_MAX_AGE_MS = 2000;
+    /** OkHttp reads each WebSocket message into a ByteString, which engine.io copies into a new array. **/
+    public static final int SOCKET_IO_COPIES = 2;
+
+    private final RollingWindow arrivalWindow = new RollingWindow(WINDOW_SIZE);
+    private final RollingWindow renderWindow = new RollingWindow(WINDOW_SIZE);
+    private final RollingWindow decodeTimeWindow = new RollingWindow(WINDOW_SIZE);
+    private final RollingWindow presentDelayWindow = new RollingWindow(WINDOW_SIZE);
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesDecoded = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesDecodeDropped = new AtomicLong();
+    private final AtomicLong framesLost = new AtomicLong();
+    private final AtomicLong framesReordered = new AtomicLong();
+    private final AtomicLong framesStale = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesCopied = new AtomicLong();
+    private volatile int transportCopies = SOCKET_IO_COPIES;
+
+    public void onFrameReceived(int bytes) {
+        framesReceived.incrementAndGet();
+        bytesReceived.addAndGet(bytes);
+        arrivalWindow.add(SystemClock.elapsedRealtime(), bytes);
+    }
+
+    public void onFrameDecoded(long decodeTimeUs) {
+        framesDecoded.incrementAndGet();
+        decodeTimeWindow.add(SystemClock.elapsedRealtime(), decodeTimeUs);
+    }
+
+    public void onFrameRendered() {
+        renderWindow.add(SystemClock.elapsedRealtime(), 0);
+    }
+
+    /** The time from a frame being ready to it being presented, which is the wait for the next vsync. **/
+    public void onFramePresented(long presentDelayUs) {
+        presentDelayWindow.add(SystemClock.elapsedRealtime(), presentDelayUs);
+    }
+
+    public void onFrameDropped() {
+        framesDropped.incrementAndGet();
+    }
+
+    /** A frame that could not be decoded, or that the decoder could not keep up with. **/
+    public void onDecodeDropped() {
+        framesDropped.incrementAndGet();
+        framesDecodeDropped.incrementAndGet();
+    }
+
+    /** A frame that was sent by the robot but never fully arrived. **/
+    public void onFrameLost() {
+        framesDropped.incrementAndGet();
+        framesLost.incrementAndGet();
+    }
+
+    /** A frame that arrived after a newer frame, which is discarded before decoding. **/
+    public void onFrameReordered() {
+        framesReordered.incrementAndGet();
+    }
+
+    /** A frame that arrived too late after it was captured, which is discarded before decoding. **/
+    public void onFrameStale() {
+        framesStale.incrementAndGet();
+    }
+
+    /** Encoded frame data that was copied after it was received, before or while it was decoded. **/
+    public void onBytesCopied(int bytes) {
+        bytesCopied.addAndGet(bytes);
+    }
+
+    public void reset() {
+        framesReceived.set(0);
+        framesDecoded.set(0);
+        framesDropped.set(0);
+        framesDecodeDropped.set(0);
+        framesLost.set(0);
+        framesReordered.set(0);
+        framesStale.set(0);
+        bytesReceived.set(0);
+        bytesCopied.set(0);
+        arrivalWindow.clear();
+        renderWindow.clear();
+        decodeTimeWindow.clear();
+        presentDelayWindow.clear();
+    }
+
+    //****** Start of getter functions ******//
+
+    public long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    public long getFramesDecoded() {
+        return framesDecoded.get();
+    }
+
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    public long getFramesDecodeDropped() {
+        return framesDecodeDropped.get();
+    }
+
+    public long getFramesLost() {
+        return framesLost.get();
+    }
+
+    public long getFramesReordered() {
+        return framesReordered.get();
+    }
+
+    public long getFramesStale() {
+        return framesStale.get();
+    }
+
+    public double getArrivalFps() {
+        return arrivalWindow.getEventRate(SystemClock.elapsedRealtime(), WINDOW_MAX_AGE_MS);
+    }
+
+    public double getRenderedFps() {
+        return renderWindow.getEventRate(SystemClock.elapsedRealtime(), WINDOW_MAX_AGE_MS);
+    }
+
+    public double getBytesPerSecond() {
+        return arrivalWindow.getValueRate(SystemClock.elapsedRealtime(), WINDOW_MAX_AGE_MS);
+    }
+
+    /** The bytes copied by the app for each received frame on average. **/
+    public double getBytesCopiedPerFrame() {
+        return (double) bytesCopied.get() / Math.max(1, framesReceived.get());
+    }
+
+    /** The bytes copied by the transport for each received frame on average, before the app receives it.
+     * These copies are mostly inside the libraries, so they are not counted but derived from the number of
+     * times the transport copies each frame. **/
+    public double getTransportBytesCopiedPerFrame() {
+        return (double) transportCopies * bytesReceived.get() / Math.max(1, framesReceived.get());
+    }
+
+    /** Sets how many times the current transport copies each frame before the app receives it. **/
+    public void setTransportCopies(int transportCopies) {
+        this.transportCopies = transportCopies;
+    }
+
+    /** The decode time in microseconds at the given percentile (0 to 100) over the window. **/
+    public long getDecodeTimeUs(double percentile) {
+        return decodeTimeWindow.getPercentile(percentile);
+    }
+
+    /** The time from a frame being ready to it being presented in microseconds, at the given percentile. **/
+    public long getPresentDelayUs(double percentile) {
+        return presentDelayWindow.getPercentile(percentile);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.comm;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Sends frames to the receiver over the loopback interface, leaving out chosen packets to simulate loss. **/
+public class UdpVideoReceiverTest {
+    private static final int PAYLOAD_SIZE = 1200;
+    private static final int GROUP_SIZE = 4;
+    private static final int FRAME_SIZE = 8000; // 7 data packets in 2 groups
+
+    private final LinkedBlockingQueue<Received> received = new LinkedBlockingQueue<>();
+    private final AtomicInteger dropped = new AtomicInteger();
+    // The receiver's clock in ms, which only moves when a test moves it
+    private final AtomicLong clock = new AtomicLong();
+    private DatagramChannel server;
+    private UdpVideoReceiver receiver;
+    private SocketAddress client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = DatagramChannel.open();
+        server.bind(new InetSocketAddress("127.0.0.1", 0));
+        receiver = new UdpVideoReceiver((InetSocketAddress) server.getLocalAddress(), "guid",
+                (data, sequence, captureTimeMs, arrivalTimeMs) ->
+                        received.add(new Received(data, sequence, captureTimeMs, System.nanoTime())),
+                dropped::incrementAndGet) {
+            @Override
+            long elapsedRealtime() {
+                return clock.get();
+            }
+        };
+        receiver.start();
+        // The receiver says hello as soon as it starts, which is where the frames are sent to
+        ByteBuffer hello = ByteBuffer.allocate(64);
+        client = server.receive(hello);
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        receiver.quit();
+        receiver.join();
+        server.close();
+    }
+
+    @Test(timeout = 10000)
+    public void lostPacketsAreRecoveredFromParity() throws IOException, InterruptedException {
+        for (int sequence = 0; sequence < 6; sequence++) {
+            Set<Integer> lost = Collections.emptySet();
+            // One packet lost in a group can be rebuilt, two in the same group cannot
+            if (sequence == 2) lost = new HashSet<>(Collections.singletonList(1));
+            if (sequence == 4) lost = new HashSet<>(Arrays.asList(0, 2));
+            sendFrame(sequence, createFrame(sequence), lost);
+        }
+        for (int sequence : new int[]{0, 1, 2, 3, 5}) {
+            Received frame = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(frame);
+            assertEquals(sequence, frame.sequence);
+            assertArrayEquals(createFrame(sequence), frame.data);
+        }
+        assertEquals(1, dropped.get());
+    }
+
+    @Test(timeout = 10000)
+    public void latePacketDoesNotReplaceNewerFrames() throws IOException, InterruptedException {
+        sendFrame(0, createFrame(0), Collections.emptySet());
+        assertEquals(0, received.poll(5, TimeUnit.SECONDS).sequence);
+        // Frame 1 is held up, while the first packets of frames 2 to 5 fill every assembly
+        byte[][] frames = new byte[6][];
+        for (int sequence = 2; sequence < 6; sequence++) {
+            frames[sequence] = createFrame(sequence);
+            sendPacket(sequence, frames[sequence], 0);
+        }
+        sendPacket(1, createFrame(1), 0);
+        for (int sequence = 2; sequence < 6; sequence++) {
+            for (int index = 1; index < packetCount(); index++) sendPacket(sequence, frames[sequence], index);
+        }
+        for (int sequence = 2; sequence < 6; sequence++) {
+            Received frame = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(frame);
+            assertEquals(sequence, frame.sequence);
+        }
+        assertEquals(0, dropped.get());
+    }
+
+    @Test(timeout = 10000)
+    public void incompleteFrameIsGivenUpAtItsDeadline() throws IOException, InterruptedException {
+        // Two packets lost in the first group of frame 5, so the parity cannot complete it
+        byte[] incomplete = createFrame(5);
+        sendFrame(5, incomplete, new HashSet<>(Arrays.asList(0, 1)));
+        // Frame 0 is sent after it, so once it is delivered the packets of frame 5 have been read as well
+        sendFrame(0, createFrame(0), Collections.emptySet());
+        assertEquals(0, received.poll(5, TimeUnit.SECONDS).sequence);
+
+        clock.set(150);
+        Thread.sleep(50);
+        assertEquals(0, dropped.get());
+        clock.set(151);
+        while (dropped.get() == 0) Thread.sleep(5);
+        assertEquals(1, dropped.get());
+
+        // The missing packets arrive too late and are ignored, while the next frame is still delivered
+        sendPacket(5, incomplete, 0);
+        sendPacket(5, incomplete, 1);
+        sendFrame(6, createFrame(6), Collections.emptySet());
+        Received frame = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(frame);
+        assertEquals(6, frame.sequence);
+        assertNull(received.poll());
+        assertEquals(1, dropped.get());
+    }
+
+    @Test(timeout = 20000)
+    public void framesArriveInTimeWithRandomLoss() throws IOException, InterruptedException {
+        int frameCount = 100;
+        Random random = new Random(1);
+        long start = System.nanoTime();
+        for (int sequence = 0; sequence < frameCount; sequence++) {
+            // Loses at most one data packet in each group, which the parity can always make up for
+            Set<Integer> lost = new HashSet<>();
+            for (int first = 0; first < packetCount(); first += GROUP_SIZE) {
+                if (random.nextInt(3) == 0) {
+                    lost.add(first + random.nextInt(Math.min(GROUP_SIZE, packetCount() - first)));
+                }
+            }
+            sendFrame(sequence, createFrame(sequence), lost);
+            Thread.sleep(1);
+        }
+        long totalLatencyNanos = 0;
+        for (int sequence = 0; sequence < frameCount; sequence++) {
+            Received frame = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(frame);
+            assertEquals(sequence, frame.sequence);
+            totalLatencyNanos += frame.receivedTimeNanos - frame.captureTimeNanos;
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        double fps = frameCount / elapsedSeconds;
+        double meanLatencyMs = totalLatencyNanos / 1e6 / frameCount;
+        assertEquals(0, dropped.get());
+        assertTrue("Delivered at " + fps + " fps", fps > 30);
+        assertTrue("Mean latency " + meanLatencyMs + " ms", meanLatencyMs < 50);
+    }
+
+    /** Sends the data packets of the frame apart from the lost ones, each group followed by its parity. The send
+     * time is used as the capture time. **/
+    private void sendFrame(long sequence, @NotNull byte[] frame, @NotNull Set<Integer> lost) throws IOException {
+        long sendTime = System.nanoTime();
+        int count = packetCount();
+        for (int first = 0; first < count; first += GROUP_SIZE) {
+            byte[] parity = new byte[PAYLOAD_SIZE];
+            for (int index = first; index < Math.min(first + GROUP_SIZE, count); index++) {
+                int offset = index * PAYLOAD_SIZE;
+                for (int i = 0; i < Math.min(PAYLOAD_SIZE, frame.length - offset); i++) parity[i] ^= frame[offset + i];
+                if (!lost.contains(index)) sendPacket(sequence, frame, index, sendTime);
+            }
+            ByteBuffer packet = createHeader(1, sequence, first / GROUP_SIZE, frame.length, sendTime);
+            packet.put(parity).flip();
+            server.send(packet, client);
+        }
+    }
+
+    private void sendPacket(long sequence, @NotNull byte[] frame, int index) throws IOException {
+        sendPacket(sequence, frame, index, System.nanoTime());
+    }
+
+    private void sendPacket(long sequence, @NotNull byte[] frame, int index, long sendTime) throws IOException {
+        int offset = index * PAYLOAD_SIZE;
+        ByteBuffer packet = createHeader(0, sequence, index, frame.length, sendTime);
+        packet.put(frame, offset, Math.min(PAYLOAD_SIZE, frame.length - offset)).flip();
+        server.send(packet, client);
+    }
+
+    @NotNull
+    private static ByteBuffer createHeader(int type, long sequence, int index, int frameLength, long captureTime) {
+        ByteBuffer packet = ByteBuffer.allocate(26 + PAYLOAD_SIZE);
+        packet.put((byte) type).put((byte) 0).putInt((int) sequence).putShort((short) index)
+                .putShort((short) packetCount()).putShort((short) GROUP_SIZE).putShort((short) PAYLOAD_SIZE)
+                .putInt(frameLength).putLong(captureTime);
+        return packet;
+    }
+
+    private static int packetCount() {
+        return (FRAME_SIZE + PAYLOAD_SIZE - 1) / PAYLOAD_SIZE;
+    }
+
+    @NotNull
+    private static byte[] createFrame(long sequence) {
+        byte[] frame = new byte[FRAME_SIZE];
+        new Random(sequence).nextBytes(frame);
+        return frame;
+    }
+
+    private static class Received {
+        final byte[] data;
+        final long sequence;
+        final long captureTimeNanos;
+        final long receivedTimeNanos;
+
+        Received(byte[] data, long sequence, long captureTimeNanos, long receivedTimeNanos) {
+            this.data = data;
+            this.sequence = sequence;
+            this.captureTimeNanos = captureTimeNanos;
+            this.receivedTimeNanos = receivedTimeNanos;
+        }
+    }
+}
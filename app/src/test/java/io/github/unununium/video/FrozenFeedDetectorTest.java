@@ -0,0 +1,62 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrozenFeedDetectorTest {
+    private static final long HASH = 0x0F0F0F0F0F0F0F0FL;
+
+    private FrozenFeedDetector detector;
+
+    @Before
+    public void setUp() {
+        detector = new FrozenFeedDetector(frozen -> { });
+        detector.setFrozenFrameCount(10);
+    }
+
+    @Test
+    public void staticSceneIsNotFrozen() {
+        for (int i = 0; i < 100; i++) detector.onFrame(HASH, 1000 + i * 33);
+        assertFalse(detector.isFrozen());
+    }
+
+    @Test
+    public void stalledCaptureTimeIsFrozen() {
+        for (int i = 0; i < 10; i++) detector.onFrame(HASH, 1000);
+        assertFalse(detector.isFrozen());
+        detector.onFrame(HASH, 1000);
+        assertTrue(detector.isFrozen());
+        // Movement in the image unfreezes it even though the timestamps still stall
+        detector.onFrame(~HASH, 1000);
+        assertFalse(detector.isFrozen());
+    }
+
+    @Test
+    public void onlyHashesAreComparedWithoutCaptureTimes() {
+        for (int i = 0; i < 11; i++) detector.onFrame(HASH, -1);
+        assertTrue(detector.isFrozen());
+        detector.reset();
+        assertFalse(detector.isFrozen());
+    }
+}
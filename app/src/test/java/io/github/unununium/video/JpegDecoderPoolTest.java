@@ -0,0 +1,143 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Runs the decoder pool on a synthetic load, where decoding a frame only sleeps for a while.
+ * Each frame is identified by its capture time. **/
+public class JpegDecoderPoolTest {
+    private static final int FRAME_COUNT = 200;
+
+    @Test(timeout = 10000)
+    public void framesArePassedOnInOrder() throws InterruptedException {
+        Random random = new Random(1);
+        VideoStats stats = new VideoStats();
+        QueueSource source = new QueueSource();
+        JpegDecoderPool pool = new JpegDecoderPool(source, new BitmapPool(4), stats, 4,
+                () -> frame -> decodeFor(frame, 1 + random.nextInt(5)));
+        pool.start();
+        source.addFrames(FRAME_COUNT);
+        List<Long> output = takeAll(pool, stats);
+        pool.quit();
+
+        for (int i = 1; i < output.size(); i++) {
+            assertTrue("Frame " + output.get(i) + " after " + output.get(i - 1), output.get(i) > output.get(i - 1));
+        }
+        assertEquals(FRAME_COUNT, output.size() + stats.getFramesDropped());
+    }
+
+    @Test(timeout = 10000)
+    public void workersDecodeConcurrently() throws InterruptedException {
+        int decodeTimeMs = 5;
+        VideoStats stats = new VideoStats();
+        QueueSource source = new QueueSource();
+        JpegDecoderPool pool = new JpegDecoderPool(source, new BitmapPool(4), stats, 4,
+                () -> frame -> decodeFor(frame, decodeTimeMs));
+        pool.start();
+        long start = System.nanoTime();
+        source.addFrames(FRAME_COUNT);
+        List<Long> output = takeAll(pool, stats);
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+        pool.quit();
+
+        assertEquals(FRAME_COUNT, output.size());
+        // A single thread would take FRAME_COUNT * decodeTimeMs, four workers should at least halve that
+        assertTrue("Took " + elapsedMs + " ms", elapsedMs < FRAME_COUNT * decodeTimeMs / 2);
+    }
+
+    @Test(timeout = 10000)
+    public void slowFrameIsSkipped() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        VideoStats stats = new VideoStats();
+        QueueSource source = new QueueSource();
+        JpegDecoderPool pool = new JpegDecoderPool(source, new BitmapPool(4), stats, 2, () -> frame -> {
+            if (frame.captureTimeMs == 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    return null;
+                }
+            }
+            return decodeFor(frame, 1);
+        });
+        pool.start();
+        source.addFrames(20);
+        List<Long> output = new ArrayList<>();
+        // The other worker runs ahead until the held back frames fill the window, and the first frame is skipped
+        while (output.size() < 10) output.add(pool.take().captureTimeMs);
+        release.countDown();
+        while (output.size() + stats.getFramesDropped() < 20) output.add(pool.take().captureTimeMs);
+        pool.quit();
+
+        assertFalse(output.contains(0L));
+        assertTrue(stats.getFramesDropped() >= 1);
+    }
+
+    /** Takes frames until every frame was either passed on or dropped. **/
+    @NotNull
+    private static List<Long> takeAll(@NotNull JpegDecoderPool pool, @NotNull VideoStats stats)
+            throws InterruptedException {
+        List<Long> output = new ArrayList<>();
+        while (output.size() + stats.getFramesDropped() < FRAME_COUNT) {
+            VideoFrame frame = pool.take();
+            if (frame != null) output.add(frame.captureTimeMs);
+        }
+        return output;
+    }
+
+    @Nullable
+    private static VideoFrame decodeFor(@NotNull VideoFrame frame, long timeMs) {
+        try {
+            Thread.sleep(timeMs);
+        } catch (InterruptedException e) {
+            return null;
+        }
+        // The bitmap is not needed to check the order, and the pool ignores a null bitmap when releasing it
+        return VideoFrame.fromBitmap(null, null, frame.captureTimeMs, frame.arrivalTimeMs);
+    }
+
+    /** A source that has every frame due at once. **/
+    private static class QueueSource implements JpegDecoderPool.FrameSource {
+        private final LinkedBlockingQueue<VideoFrame> frames = new LinkedBlockingQueue<>();
+
+        void addFrames(int count) {
+            for (int i = 0; i < count; i++) frames.add(VideoFrame.fromJpeg(new byte[1], i, 0));
+        }
+
+        @Nullable
+        @Override
+        public VideoFrame take() throws InterruptedException {
+            return frames.poll(1, TimeUnit.DAYS);
+        }
+    }
+}
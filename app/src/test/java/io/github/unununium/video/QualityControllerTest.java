@@ -0,0 +1,108 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class QualityControllerTest {
+    // Level 0 is 30 fps, where a frame interval is 33 ms
+    private static final double SLOW_DECODE_MS = 30;
+    private static final double FAST_DECODE_MS = 5;
+
+    private final List<QualityController.Level> changes = new ArrayList<>();
+    private QualityController controller;
+
+    @Before
+    public void setUp() {
+        controller = new QualityController(changes::add);
+    }
+
+    @Test
+    public void stepsDownWhenDecodingIsSlow() {
+        assertFalse(controller.evaluate(SLOW_DECODE_MS, 0, 30));
+        assertTrue(controller.evaluate(SLOW_DECODE_MS, 0, 30));
+        assertEquals(1, changes.size());
+        assertSame(changes.get(0), controller.getCurrentLevel());
+        assertTrue(controller.getCurrentLevel().width < QualityController.getBestLevel().width);
+    }
+
+    @Test
+    public void stepsUpAfterHealthyPeriod() {
+        controller.evaluate(SLOW_DECODE_MS, 0, 30);
+        controller.evaluate(SLOW_DECODE_MS, 0, 30);
+        controller.onLevelAcknowledged(controller.getCurrentLevel());
+        // Samples right after a change are ignored while the pipeline settles
+        controller.evaluate(FAST_DECODE_MS, 0, 30);
+        controller.evaluate(FAST_DECODE_MS, 0, 30);
+        for (int i = 0; i < 4; i++) assertFalse(controller.evaluate(FAST_DECODE_MS, 0, 30));
+        assertTrue(controller.evaluate(FAST_DECODE_MS, 0, 30));
+        assertSame(QualityController.getBestLevel(), controller.getCurrentLevel());
+    }
+
+    @Test
+    public void lowFrameRateIsIgnoredUntilAcknowledged() {
+        // A robot that does not change its frame rate
+        for (int i = 0; i < 10; i++) assertFalse(controller.evaluate(FAST_DECODE_MS, 0, 10));
+        controller.onLevelAcknowledged(controller.getCurrentLevel());
+        controller.evaluate(FAST_DECODE_MS, 0, 10);
+        assertTrue(controller.evaluate(FAST_DECODE_MS, 0, 10));
+    }
+
+    @Test
+    public void lowFrameRateAfterSteppingDownIsIgnoredUntilAcknowledged() {
+        controller.evaluate(SLOW_DECODE_MS, 0, 30);
+        controller.evaluate(SLOW_DECODE_MS, 0, 30);
+        // Two samples while settling and four healthy ones, which is not yet enough to step back up
+        for (int i = 0; i < 6; i++) assertFalse(controller.evaluate(FAST_DECODE_MS, 0, 10));
+        assertEquals(1, changes.size());
+    }
+
+    @Test
+    public void clientSideDropsAreIgnored() {
+        VideoStats stats = new VideoStats();
+        for (int sample = 0; sample < 5; sample++) {
+            for (int i = 0; i < 10; i++) {
+                stats.onFrameReceived(1000);
+                stats.onFrameStale();
+                stats.onFrameDropped();
+            }
+            controller.sample(stats);
+        }
+        assertTrue(changes.isEmpty());
+
+        for (int sample = 0; sample < 2; sample++) {
+            for (int i = 0; i < 10; i++) {
+                stats.onFrameReceived(1000);
+                stats.onDecodeDropped();
+                stats.onFrameLost();
+            }
+            controller.sample(stats);
+        }
+        assertEquals(1, changes.size());
+    }
+}
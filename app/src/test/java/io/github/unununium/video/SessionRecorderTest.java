@@ -0,0 +1,115 @@
+/*
+ * This program is the client app for Team Unununium's VR Robot Explorer found at <https://github.com/team-unununium>
+ * Copyright (C) 2020 Team Unununium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/> .
+ */
+
+package io.github.unununium.video;
+
+import org.jcodec.common.DemuxerTrack;
+import org.jcodec.common.DemuxerTrackMeta;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.io.SeekableByteChannel;
+import org.jcodec.common.model.Size;
+import org.jcodec.containers.mp4.demuxer.MP4Demuxer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SessionRecorderTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test(timeout = 10000)
+    public void recordingCanBeReadBack() throws IOException, InterruptedException {
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicBoolean saved = new AtomicBoolean();
+        File file = folder.newFile("recording.mp4");
+        SessionRecorder recorder = new SessionRecorder(file, (r, s) -> {
+            saved.set(s);
+            finished.countDown();
+        });
+        recorder.start();
+        byte[] frame = createJpeg();
+        // Ten frames 40 ms apart, the last one lasts as long as the one before it
+        for (int i = 0; i < 10; i++) recorder.offer(frame, 1000 + i * 40);
+        recorder.finish();
+        finished.await();
+
+        assertTrue(saved.get());
+        assertEquals(10, recorder.getFrameCount());
+        try (SeekableByteChannel channel = NIOUtils.readableChannel(file)) {
+            DemuxerTrack track = MP4Demuxer.createMP4Demuxer(channel).getVideoTracks().get(0);
+            DemuxerTrackMeta meta = track.getMeta();
+            assertEquals(10, meta.getTotalFrames());
+            assertEquals(0.4, meta.getTotalDuration(), 0.001);
+            assertEquals(frame.length, track.nextFrame().getData().remaining());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void emptyRecordingIsDeleted() throws IOException, InterruptedException {
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicBoolean saved = new AtomicBoolean(true);
+        File file = folder.newFile("empty.mp4");
+        SessionRecorder recorder = new SessionRecorder(file, (r, s) -> {
+            saved.set(s);
+            finished.countDown();
+        });
+        recorder.start();
+        recorder.offer(new byte[]{1, 2, 3}, 0);
+        recorder.finish();
+        finished.await();
+
+        assertFalse(saved.get());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void jpegSizeIsRead() throws IOException {
+        Size size = SessionRecorder.readJpegSize(createJpeg());
+        assertNotNull(size);
+        assertEquals(WIDTH, size.getWidth());
+        assertEquals(HEIGHT, size.getHeight());
+        assertNull(SessionRecorder.readJpegSize(new byte[]{(byte) 0xFF, (byte) 0xD8, 0, 0}));
+    }
+
+    @NotNull
+    private static byte[] createJpeg() throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", output);
+        return output.toByteArray();
+    }
+}